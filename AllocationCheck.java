@@ -0,0 +1,82 @@
+/* AllocationCheck.java
+ *
+ *  This class checks that the simulation loop allocates nothing once it is
+ *  warmed up, so a long run never stops for the garbage collector. It runs
+ *  an environment for a while to let the JIT compile the loop, then counts
+ *  the bytes the thread allocates over many more ticks with the JVM's
+ *  per-thread allocation counter, for each part of the loop on its own:
+ *  ticking (with the metrics on), publishing a frame, and drawing it both
+ *  through Java2D and straight into the pixels.
+ *
+ *  Compilation: javac-algs4 AllocationCheck.java
+ *  Run: java-algs4 AllocationCheck < ./Environment-Files/Environment1.txt
+ *  (optionally with the number of ticks to warm up for)
+ */
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.lang.management.ManagementFactory;
+
+public class AllocationCheck {
+
+    // Ticks run before counting unless told otherwise, long enough for the
+    // JIT to compile the loop and drop the objects that never escape it
+    private static final int WARMUP_TICKS = 200000;
+
+    // Ticks counted
+    private static final int COUNTED_TICKS = 10000;
+
+    // Stores the JVM's counter of bytes allocated by each thread
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Returns the number of bytes the calling thread has allocated so far
+    private static long allocated() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Runs an environment from standard input and prints the bytes each part
+    // of the loop allocates per tick once warmed up
+    public static void main(String[] args) {
+        int warmup = args.length > 0 ? Integer.parseInt(args[0]) : WARMUP_TICKS;
+        Simulation sim = Simulation.read(new In());
+        sim.setMetrics(new TickMetrics(null));
+        MapView view = new MapView(sim.getRoads(), sim.getGrid());
+        MapView pixelView = new MapView(sim.getRoads(), sim.getGrid(), 2);
+        FrameBuffer frames = new FrameBuffer();
+
+        long[] bytes = new long[4];
+        for (int i = 0; i < warmup + COUNTED_TICKS; i++) {
+            if (i == warmup)
+                bytes = new long[4];
+
+            long start = allocated();
+            sim.step();
+            long ticked = allocated();
+            frames.publish(sim);
+            long published = allocated();
+            FrameBuffer.Frame f = frames.latest();
+            view.draw(f, .5);
+            long drawn = allocated();
+            pixelView.draw(f, .5);
+            long painted = allocated();
+
+            bytes[0] += ticked - start;
+            bytes[1] += published - ticked;
+            bytes[2] += drawn - published;
+            bytes[3] += painted - drawn;
+        }
+
+        pixelView.close();
+
+        String[] parts = { "tick", "publish", "draw", "paint" };
+        boolean none = true;
+        for (int p = 0; p < parts.length; p++) {
+            StdOut.printf("%-8s %8.1f bytes per tick%n",
+                          parts[p], (double) bytes[p] / COUNTED_TICKS);
+            none &= bytes[p] == 0;
+        }
+        StdOut.println("allocation free: " + none + " (expected true)");
+    }
+}
@@ -0,0 +1,216 @@
+/* BatchRunner.java
+ *
+ *  This class runs every scenario in a directory (environment files and
+ *  .sim scenario files) headlessly for the same number of ticks, all in one
+ *  JVM, on an executor of a given number of threads or, on a JVM that has
+ *  them, a virtual thread per scenario. Every simulation owns its roads,
+ *  cars and stoplights, so runs share nothing and can go in any order. When
+ *  they are done a table of each run's wall time, ticks per second and end
+ *  state (moving and stopped cars, the average speed and the world
+ *  checksum) is printed and can be written to a file. With -Dcheck=true
+ *  every scenario is run again alone afterwards and must end in the same
+ *  state it did in the batch.
+ *
+ *  Compilation: javac-algs4 BatchRunner.java
+ *  Run: java-algs4 BatchRunner ./Environment-Files 10000 4 summary.txt
+ *  (the number of threads can also be virtual, and the summary file can be
+ *  left off)
+ */
+
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BatchRunner {
+
+    // Is how one scenario ended up after a run
+    public static class Result {
+
+        // Stores the file the scenario was read from
+        final String name;
+
+        // Stores the number of cars, roads and stoplights in the scenario
+        int numAC, numRoads, numSL;
+
+        // Stores the ticks run and the seconds they took on the wall clock
+        long ticks;
+        double seconds;
+
+        // Stores the number of cars moving and stopped at the end, and their
+        // average speed
+        int moving, stopped;
+        double meanSpeed;
+
+        // Stores the checksum of the world at the end
+        long checksum;
+
+        // Stores what went wrong if the scenario could not be run (null if
+        // nothing did)
+        String error;
+
+        // Constructor for the result of the scenario in the given file
+        Result(String name) {
+            this.name = name;
+        }
+
+        // Returns the ticks run per second of wall time
+        public double ticksPerSecond() {
+            return seconds > 0 ? ticks / seconds : 0;
+        }
+    }
+
+    // Stores the scenario files to run
+    private final File[] scenarios;
+
+    // Stores the number of ticks each scenario is run for
+    private final long numTicks;
+
+    // Constructor that runs the scenarios in the given directory (files
+    // ending in .txt or .sim, in name order) for the given number of ticks
+    public BatchRunner(File dir, long numTicks) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".txt")
+                || ScenarioFile.isScenarioFile(name));
+        if (files == null)
+            throw new IllegalArgumentException(dir + " is not a directory");
+        Arrays.sort(files);
+        scenarios = files;
+        this.numTicks = numTicks;
+    }
+
+    // Returns an executor with the given number of threads, or with a virtual
+    // thread per task if it is "virtual" (which needs a JVM with them)
+    public static ExecutorService executor(String threads) {
+        if (!threads.equals("virtual"))
+            return Executors.newFixedThreadPool(Integer.parseInt(threads));
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("this JVM has no virtual threads", e);
+        }
+    }
+
+    // Runs every scenario on the given executor and returns their results in
+    // name order, once all of them are done
+    public List<Result> runAll(ExecutorService executor) throws InterruptedException {
+        List<Future<Result>> futures = new ArrayList<Future<Result>>();
+        for (File f : scenarios)
+            futures.add(executor.submit(() -> run(f)));
+
+        List<Result> results = new ArrayList<Result>();
+        for (Future<Result> future : futures) {
+            try {
+                results.add(future.get());
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    // Runs the scenario in the given file on the calling thread and returns
+    // how it ended up (or what went wrong)
+    public Result run(File file) {
+        Result r = new Result(file.getName());
+        try {
+            Simulation sim = Simulation.open(file.getPath());
+            r.numAC = sim.getCars().size();
+            r.numRoads = sim.getRoads().length;
+            r.numSL = sim.getStoplights().length;
+
+            long start = System.nanoTime();
+            for (long i = 0; i < numTicks; i++)
+                sim.tick();
+            r.seconds = (System.nanoTime() - start) / 1e9;
+            r.ticks = numTicks;
+
+            Fleet cars = sim.getCars();
+            double totalSpeed = 0;
+            for (int i = 0; i < cars.size(); i++) {
+                if (cars.isStopped(i))
+                    r.stopped++;
+                else
+                    r.moving++;
+                totalSpeed += Math.hypot(cars.vx[i], cars.vy[i]);
+            }
+            r.meanSpeed = cars.size() > 0 ? totalSpeed / cars.size() : 0;
+            r.checksum = sim.checksum();
+        }
+        catch (RuntimeException e) {
+            r.error = e.toString();
+        }
+        return r;
+    }
+
+    // Writes a table of the given results to the given writer, with a line
+    // of totals at the end
+    public static void report(List<Result> results, double wallSeconds, PrintWriter out) {
+        out.printf("%-24s %7s %6s %6s %10s %12s %7s %7s %9s %16s%n", "scenario", "cars",
+                   "roads", "lights", "seconds", "ticks/s", "moving", "stopped",
+                   "avg speed", "checksum");
+        long ticks = 0;
+        int failed = 0;
+        for (Result r : results) {
+            if (r.error != null) {
+                out.printf("%-24s failed: %s%n", r.name, r.error);
+                failed++;
+                continue;
+            }
+            out.printf("%-24s %7d %6d %6d %10.3f %12.0f %7d %7d %9.3f %016x%n", r.name,
+                       r.numAC, r.numRoads, r.numSL, r.seconds, r.ticksPerSecond(),
+                       r.moving, r.stopped, r.meanSpeed, r.checksum);
+            ticks += r.ticks;
+        }
+        out.printf("%d scenarios (%d failed), %d ticks in %.3f s of wall time, "
+                           + "%.0f ticks/s in all%n", results.size(), failed, ticks,
+                   wallSeconds, wallSeconds > 0 ? ticks / wallSeconds : 0);
+        out.flush();
+    }
+
+    // Runs every scenario in the directory given as the first argument for
+    // the number of ticks given as the second, on the number of threads
+    // given as the third (or virtual, the number of cores if there is none),
+    // and prints a summary, also writing it to the file given as the fourth
+    public static void main(String[] args) throws IOException, InterruptedException {
+        BatchRunner batch = new BatchRunner(new File(args[0]), Long.parseLong(args[1]));
+        String threads = "" + Runtime.getRuntime().availableProcessors();
+        if (args.length > 2)
+            threads = args[2];
+
+        ExecutorService executor = executor(threads);
+        long start = System.nanoTime();
+        List<Result> results = batch.runAll(executor);
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+
+        report(results, wallSeconds, new PrintWriter(System.out));
+        if (args.length > 3) {
+            try (PrintWriter out = new PrintWriter(new FileWriter(args[3]))) {
+                report(results, wallSeconds, out);
+            }
+        }
+
+        // Every scenario run again alone must end where it did in the batch
+        if (Boolean.getBoolean("check")) {
+            boolean same = true;
+            for (int i = 0; i < results.size(); i++) {
+                Result alone = batch.run(batch.scenarios[i]);
+                same &= alone.checksum == results.get(i).checksum;
+            }
+            StdOut.println("same end state alone as in the batch: " + same
+                                   + " (expected true)");
+        }
+    }
+}
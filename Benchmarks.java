@@ -0,0 +1,274 @@
+/* Benchmarks.java
+ *
+ *  This class times the hot paths of the simulator so a change that slows
+ *  them down shows up as a number. Every benchmark is run on generated grid
+ *  cities for each combination of fleet size and map size it is given. A
+ *  benchmark is one pass over the fleet (or the roads or the stoplights),
+ *  which is warmed up first and then timed over several rounds. The clock is
+ *  only read around batches of passes, made long enough that reading it
+ *  takes no part of the time. The cars a pass moves or turns are put back
+ *  before every pass, and the time putting them back takes alone is taken
+ *  off. The tick benchmark runs a fixed number of ticks from the starting
+ *  state in each batch, so every round times the same part of the run.
+ *  Results are reported as nanoseconds per car (or per road or light).
+ *  The same passes are run under JMH, which forks the JVM for each
+ *  measurement, by the benchmarks in src/jmh/java (gradle jmh).
+ *
+ *  Compilation: javac-algs4 Benchmarks.java
+ *  Run: java-algs4 Benchmarks 1000,100000 100,1000
+ *  (fleet sizes, map sizes and optionally the names of the benchmarks to run)
+ */
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Scanner;
+
+public class Benchmarks {
+
+    // Seed every city is generated from
+    private static final long SEED = 226;
+
+    // Nanoseconds each benchmark is warmed up for
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+
+    // Number of timed rounds and nanoseconds each round lasts
+    private static final int ROUNDS = 5;
+    private static final long ROUND_NANOS = 500_000_000L;
+
+    // Nanoseconds a batch of passes takes at least, so the clock is read
+    // rarely enough not to be part of the time
+    private static final long BATCH_NANOS = 1_000_000L;
+
+    // Ticks each batch of the tick benchmark runs from the starting state
+    private static final int TICKS_PER_BATCH = 50;
+
+    // Is one pass of a benchmark, returning a value so the work is not skipped
+    private interface Pass {
+        double run();
+    }
+
+    // Stores a value every pass adds to so the JIT cannot drop the work
+    private static double sink;
+
+    // Stores the simulation being measured
+    private Simulation sim;
+
+    // Stores the generated city, read again before every batch of ticks
+    private final String text;
+
+    // Stores the starting state of the fleet, copied back between passes
+    private final double[] posX;
+    private final double[] posY;
+    private final double[] vx;
+    private final double[] vy;
+    private final double[] speed;
+
+    // Constructor that generates a grid city of about the given side with the
+    // given number of cars and a stoplight on every tenth of its roads
+    public Benchmarks(int numAC, int mapSize) {
+        int numRoads = Math.max(2, 2 * (mapSize / 20 - 1));
+        CityGenerator city = new CityGenerator(true, numRoads, SEED);
+        StringWriter out = new StringWriter();
+        city.write(out, Math.max(1, numRoads / 10), numAC);
+        text = out.toString();
+        sim = Simulation.read(new In(new Scanner(text)));
+
+        Fleet cars = sim.getCars();
+        posX = cars.posX.clone();
+        posY = cars.posY.clone();
+        vx = cars.vx.clone();
+        vy = cars.vy.clone();
+        speed = cars.speed.clone();
+    }
+
+    // Puts the fleet back the way it started
+    void reset() {
+        Fleet cars = sim.getCars();
+        int n = cars.size();
+        System.arraycopy(posX, 0, cars.posX, 0, n);
+        System.arraycopy(posY, 0, cars.posY, 0, n);
+        System.arraycopy(vx, 0, cars.vx, 0, n);
+        System.arraycopy(vy, 0, cars.vy, 0, n);
+        System.arraycopy(speed, 0, cars.speed, 0, n);
+    }
+
+    // Puts the simulation back the way it started, for the tick benchmark
+    void restart() {
+        sim = Simulation.read(new In(new Scanner(text)));
+    }
+
+    // Moves every car one tick
+    double updatePosition() {
+        Fleet cars = sim.getCars();
+        for (int i = 0; i < cars.size(); i++)
+            cars.updatePosition(i, Simulation.DELTA_T);
+        return cars.posX[0];
+    }
+
+    // Turns every car that has reached the end of its road
+    double makeTurn() {
+        Fleet cars = sim.getCars();
+        for (int i = 0; i < cars.size(); i++)
+            cars.makeTurn(i);
+        return cars.vx[0];
+    }
+
+    // Lays every road out in a new grid the size of the map the way
+    // Car.buildRoad does, without drawing it
+    double buildRoad() {
+        RoadGrid grid = sim.getGrid();
+        RoadGrid fresh = new RoadGrid(grid.getWidth(), grid.getHeight());
+        for (int[] r : sim.getRoads())
+            fresh.fill(r[0], r[1], r[2], r[3]);
+        return fresh.bytes();
+    }
+
+    // Adds up the distance from every car to the first stoplight
+    double distanceTo() {
+        Fleet cars = sim.getCars();
+        Stoplight sl = sim.getStoplights()[0];
+        double total = 0;
+        for (int i = 0; i < cars.size(); i++)
+            total += Car.distanceTo(cars.posX[i], cars.posY[i],
+                                    sl.getHorizPosition(), sl.getVertPosition());
+        return total;
+    }
+
+    // Works out the phase of every stoplight at a different time each pass
+    double phaseAt() {
+        double total = 0;
+        double time = sim.getTime() + sink;
+        for (Stoplight sl : sim.getStoplights())
+            total += sl.phaseAt(time);
+        return total;
+    }
+
+    // Runs one whole tick of the simulation without drawing
+    double tick() {
+        sim.tick();
+        return sim.getTime();
+    }
+
+    // Returns the number of things one pass of the named benchmark goes over
+    private int opsPerPass(String name) {
+        switch (name) {
+            case "buildRoad":
+                return sim.getRoads().length;
+            case "phaseAt":
+                return sim.getStoplights().length;
+            default:
+                return Math.max(1, sim.getCars().size());
+        }
+    }
+
+    // Returns one pass of the named benchmark
+    private Pass pass(String name) {
+        switch (name) {
+            case "updatePosition":
+                return this::updatePosition;
+            case "makeTurn":
+                return this::makeTurn;
+            case "buildRoad":
+                return this::buildRoad;
+            case "distanceTo":
+                return this::distanceTo;
+            case "phaseAt":
+                return this::phaseAt;
+            case "tick":
+                return this::tick;
+            default:
+                throw new IllegalArgumentException("no benchmark named " + name);
+        }
+    }
+
+    // Times the named benchmark, returning the nanoseconds per op of each round
+    public double[] measure(String name) {
+        Pass pass = pass(name);
+        int ops = opsPerPass(name);
+        boolean moves = name.equals("updatePosition") || name.equals("makeTurn");
+        boolean ticks = name.equals("tick");
+
+        // Batches grow while warming up until they take long enough
+        int batch = ticks ? TICKS_PER_BATCH : 1;
+        long end = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < end) {
+            if (batch(pass, batch, moves, ticks) < BATCH_NANOS && !ticks)
+                batch *= 2;
+        }
+
+        double[] rounds = new double[ROUNDS];
+        for (int r = 0; r < ROUNDS; r++) {
+            long timed = 0;
+            long passes = 0;
+            while (timed < ROUND_NANOS) {
+                timed += batch(pass, batch, moves, ticks);
+                passes += batch;
+            }
+            rounds[r] = (double) timed / (passes * ops);
+        }
+        return rounds;
+    }
+
+    // Runs n passes and returns the nanoseconds they took. Batches of ticks
+    // start from the starting state, and batches that move the cars put
+    // them back before every pass and take off the time that alone takes
+    private long batch(Pass pass, int n, boolean moves, boolean ticks) {
+        if (ticks)
+            restart();
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            if (moves)
+                reset();
+            sink += pass.run();
+        }
+        long timed = System.nanoTime() - begin;
+
+        if (moves) {
+            begin = System.nanoTime();
+            for (int i = 0; i < n; i++)
+                reset();
+            timed -= System.nanoTime() - begin;
+        }
+        return Math.max(timed, 0);
+    }
+
+    // Parses a comma separated list of numbers
+    private static int[] sizes(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    // Runs the benchmarks named on the command line (all of them if none are)
+    // for every fleet size and map size given and prints a table of results
+    public static void main(String[] args) {
+        int[] fleetSizes = sizes(args.length > 0 ? args[0] : "1000,100000");
+        int[] mapSizes = sizes(args.length > 1 ? args[1] : "100,1000");
+        String[] names = {
+                "updatePosition", "makeTurn", "buildRoad", "distanceTo", "phaseAt",
+                "tick"
+        };
+        if (args.length > 2)
+            names = Arrays.copyOfRange(args, 2, args.length);
+
+        StdOut.printf("%-16s %10s %8s %12s %10s%n",
+                      "benchmark", "cars", "map", "ns/op", "+-");
+        for (String name : names) {
+            for (int numAC : fleetSizes) {
+                for (int mapSize : mapSizes) {
+                    double[] rounds = new Benchmarks(numAC, mapSize).measure(name);
+                    double mean = Arrays.stream(rounds).average().orElse(0);
+                    double var = Arrays.stream(rounds)
+                                       .map(t -> (t - mean) * (t - mean)).sum()
+                            / Math.max(1, rounds.length - 1);
+                    StdOut.printf("%-16s %10d %8d %12.3f %10.3f%n",
+                                  name, numAC, mapSize, mean, Math.sqrt(var));
+                }
+            }
+        }
+        if (sink == 42)
+            StdOut.println();
+    }
+}
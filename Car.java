@@ -2,7 +2,8 @@
  *
  *  This class builds the autonomous car and background, allowing for
  *  vehicle to infrastructure communication so the car knows where to turn and
- *  stop.
+ *  stop. The car's fields live in a Fleet, so a Car is only a view of one
+ *  index of it.
  *
  *  Compilation: javac-algs4 Car.java
  *  Run: java-algs4 Car
@@ -17,185 +18,114 @@ public class Car {
     // Display will be DISPLAY_SIZE x DISPLAY_SIZE
     private static int DISPLAY_SIZE = 100;
 
-    // Sets the road width (matched in all input files)
-    private final int ROAD_WIDTH = 2;
+    // Color of the ground around the roads
+    public static final Color GRASS_COLOR = new Color(0, 71, 49);
 
-    // Sets all points that are road as true and all points that are not road as false
-    static boolean[][] isRoad = new boolean[DISPLAY_SIZE][DISPLAY_SIZE];
+    // Color of the roads
+    public static final Color ROAD_COLOR = Color.gray;
 
-    // Stores the horizontal-position of the car
-    private double posX;
+    // Stores which points are road for cars made with the public
+    // constructor (the test mains lay their roads out here). Fleets never
+    // drive on it unless a car puts them there, so simulations do not share it
+    static final RoadGrid road = new RoadGrid(DISPLAY_SIZE, DISPLAY_SIZE);
 
-    // Stores the vertical-position of the car
-    private double posY;
+    // Stores which points of road are blocked by a red light for the same cars
+    static final SignalMask redLights = SignalMask.over(road);
 
-    // Stores the horizontal-velocity of the car
-    private double vx;
+    // Stores the fleet this car's fields live in
+    private final Fleet fleet;
 
-    // Stores the vertical-velocity of the car
-    private double vy;
+    // Stores the car's index in the fleet
+    private final int index;
 
-    // Stores the car's general speed
-    private double speed;
-
-    // Stores the radius of the car for when it is drawn
-    private double rad;
-
-    // Stores what direction the car will accelerate in
-    private char direction;
-
-    // Stores the car's color
-    private Color color;
-
-    // Constructor that sets the initial position of the car and declares
-    // the radius to be .5. Takes horizontal and vertical positions and velocities
+    // Constructor that sets the initial position of the car in a fleet of its
+    // own. Takes horizontal and vertical positions and velocities
     //  as well as color as arguments
     public Car(double startingX, double startingY, double veloX, double veloY, Color c) {
-        posX = startingX;
-        posY = startingY;
-        vx = veloX;
-        vy = veloY;
-        rad = .5;
-        color = c;
+        fleet = new Fleet(1);
+        fleet.setRoad(road, redLights);
+        index = fleet.add(startingX, startingY, veloX, veloY, c);
+    }
+
+    // Constructor for a view of the car at the given index of a fleet
+    Car(Fleet fleet, int index) {
+        this.fleet = fleet;
+        this.index = index;
     }
 
     // Draws the background (the road system) with the 2D roads array as the argument
     public static void drawBackground(int[][] roads) {
-        StdDraw.setXscale(0, DISPLAY_SIZE);
-        StdDraw.setYscale(0, DISPLAY_SIZE);
-        StdDraw.setPenColor(new Color(0, 71, 49));
-        StdDraw.filledSquare(DISPLAY_SIZE / 2, DISPLAY_SIZE / 2, DISPLAY_SIZE / 2);
-        StdDraw.setPenColor(Color.gray);
+        drawBackground(roads, road);
+    }
+
+    // Draws the background (the road system) scaled to the given road grid
+    // and lays the roads out in it. Takes the 2D roads array and grid as arguments
+    public static void drawBackground(int[][] roads, RoadGrid grid) {
+        int size = Math.max(grid.getWidth(), grid.getHeight());
+        StdDraw.setXscale(0, size);
+        StdDraw.setYscale(0, size);
+        StdDraw.setPenColor(GRASS_COLOR);
+        StdDraw.filledSquare(size / 2.0, size / 2.0, size / 2.0);
+        StdDraw.setPenColor(ROAD_COLOR);
 
         for (int i = 0; i < roads.length; i++) {
-            buildRoad(roads[i][0], roads[i][1], roads[i][2], roads[i][3]);
+            buildRoad(grid, roads[i][0], roads[i][1], roads[i][2], roads[i][3]);
         }
     }
 
-
-    // Draws the road with standard draw and sets the area of the road in isRoad to true
+    // Draws the road with standard draw and sets the area of the road to true
     // Takes xCenter, yCenter, half width and half height as arguments
     public static void buildRoad(int xCenter, int yCenter, int halfWidth, int halfHeight) {
-        StdDraw.filledRectangle(xCenter, yCenter, halfWidth, halfHeight);
+        buildRoad(road, xCenter, yCenter, halfWidth, halfHeight);
+    }
 
-        for (int i = yCenter - halfHeight; i <= yCenter + halfHeight; i++) {
-            for (int j = xCenter - halfWidth; j <= xCenter + halfWidth; j++) {
-                if (i >= 0 && i < isRoad.length && j >= 0 && j < isRoad[i].length)
-                    isRoad[i][j] = true;
-            }
-        }
+    // Draws the road with standard draw and sets the area of the road in the
+    // given grid to true. Takes the grid, xCenter, yCenter, half width and half
+    // height as arguments
+    public static void buildRoad(RoadGrid grid, int xCenter, int yCenter,
+                                 int halfWidth, int halfHeight) {
+        StdDraw.filledRectangle(xCenter, yCenter, halfWidth, halfHeight);
+        grid.fill(xCenter, yCenter, halfWidth, halfHeight);
     }
 
     // Updates the position given a time step (deltaT)
     public void updatePosition(double deltaT) {
-        posX += vx * deltaT;
-        posY += vy * deltaT;
+        fleet.updatePosition(index, deltaT);
     }
 
 
     // Turns the car right by changing the car's velocity depending on the
     // current trajectory
     public void turnRight() {
-        if (vy != 0) {
-            vx = vy;
-            vy = 0;
-        }
-
-        else if (vx != 0) {
-            vy = -1 * vx;
-            vx = 0;
-        }
+        fleet.turnRight(index);
     }
 
     // Turns the car left by changing the car's velocity depending on
     // the current trajectory
     public void turnLeft() {
-        if (vy != 0) {
-            vx = -1 * vy;
-            vy = 0;
-        }
-
-        else if (vx != 0) {
-            vy = vx;
-            vx = 0;
-        }
+        fleet.turnLeft(index);
     }
 
     // Draws the car object
     public void draw() {
-        StdDraw.setPenColor(color);
-        StdDraw.filledSquare(posX, posY, rad);
+        fleet.draw(index);
     }
 
-    // Checks if the car is on the road through the isRoad 2D array given
+    // Checks if the car is on the road through its fleet's road grid given
     // x and y positions as arguments
     public boolean onRoad(int py, int px) {
-        if (px >= 0 && px <= DISPLAY_SIZE && py >= 0 && py <= DISPLAY_SIZE)
-            return isRoad[py][px];
-        return false;
+        return fleet.onRoad(py, px);
     }
 
     // If the car hits a dead end, it will make a turn in the direction
     // where there is road or stop
     public void makeTurn() {
-        if (!onRoad((int) (posY + ROAD_WIDTH), (int) (posX)) && vy > 0) {
-            if (isRoad[(int) posY][(int) (posX - ROAD_WIDTH)]) {
-                turnLeft();
-            }
-            else if (isRoad[(int) posY][(int) (posX + ROAD_WIDTH)]) {
-                turnRight();
-            }
-            else {
-                stop((int) posY + ROAD_WIDTH, (int) posX);
-            }
-        }
-
-        else if (!onRoad((int) (posY), (int) (posX + ROAD_WIDTH)) && vx > 0) {
-            if (isRoad[(int) (posY + ROAD_WIDTH)][(int) posX]) {
-                turnLeft();
-            }
-            else if (isRoad[(int) (posY - ROAD_WIDTH)][(int) posX]) {
-                turnRight();
-            }
-            else {
-                stop((int) posY, (int) posX + ROAD_WIDTH);
-            }
-        }
-
-        else if (!onRoad((int) (posY), (int) (posX - ROAD_WIDTH)) && vx < 0) {
-            if (isRoad[(int) (posY + ROAD_WIDTH)][(int) posX]) {
-                turnRight();
-            }
-            else if (isRoad[(int) (posY - ROAD_WIDTH)][(int) posX]) {
-                turnLeft();
-            }
-            else {
-                stop((int) posY, (int) posX - ROAD_WIDTH);
-            }
-        }
-
-        else if (!onRoad((int) (posY - ROAD_WIDTH), (int) (posX)) && vy < 0) {
-            if (isRoad[(int) posY][(int) (posX + ROAD_WIDTH)]) {
-                turnLeft();
-            }
-            else if (isRoad[(int) posY][(int) (posX - ROAD_WIDTH)]) {
-                turnRight();
-            }
-            else {
-                stop((int) posY - ROAD_WIDTH, (int) posX);
-            }
-        }
+        fleet.makeTurn(index);
     }
 
     // Allows car to accelerate after stoplight turns green
     public void accelerate(Stoplight sl) {
-        if (vy == 0 && vx == 0 &&
-                distanceTo(posX, posY, sl.getHorizPosition(), sl.getVertPosition()) < 2) {
-            if (direction == 'v')
-                vy = speed;
-            else if (direction == 'h')
-                vx = speed;
-        }
+        fleet.accelerate(index, sl);
     }
 
     // Calculates distance between two points (given two x and y positions)
@@ -205,76 +135,92 @@ public class Car {
 
     // If the car is off or will go off the road it will stop
     public void stop(int py, int px) {
-        if (!onRoad(py, px)) {
-            vx = 0;
-            vy = 0;
-        }
-        else
-            stop();
+        fleet.stop(index, py, px);
     }
 
     // Stops the car if it goes off the road
     public void stop() {
-        if (!onRoad((int) posY, (int) posX)) {
-            if (vy != 0) {
-                speed = vy;
-                direction = 'v';
-            }
-            else if (vx != 0) {
-                speed = vx;
-                direction = 'h';
-            }
-
-            vy = 0;
-            vx = 0;
-        }
+        fleet.stop(index);
     }
 
     // If the light is red, it will treat it as there is no road there to stop the car
-    // Given stoplight as an argument
+    // Given stoplight as an argument (hitting it again changes nothing)
     public static void hitRedlight(Stoplight a) {
-        isRoad[a.getVertPosition()][a.getHorizPosition()] = false;
+        if (!redLights.isBlocked(a.getVertPosition(), a.getHorizPosition()))
+            redLights.block(a.getVertPosition(), a.getHorizPosition());
+    }
+
+    // Lets cars drive through the light again once it is no longer red
+    // Given stoplight as an argument
+    public static void clearRedlight(Stoplight a) {
+        if (redLights.isBlocked(a.getVertPosition(), a.getHorizPosition()))
+            redLights.unblock(a.getVertPosition(), a.getHorizPosition());
+    }
+
+    // Returns the fleet this car's fields live in
+    public Fleet getFleet() {
+        return fleet;
+    }
+
+    // Returns the car's index in its fleet
+    public int getIndex() {
+        return index;
+    }
+
+    // Returns the color of the car
+    public Color getColor() {
+        return fleet.color(index);
+    }
+
+    // Returns the horizontal position of the car
+    public double getXPosition() {
+        return fleet.posX[index];
+    }
+
+    // Returns the vertical position of the car
+    public double getYPosition() {
+        return fleet.posY[index];
     }
 
     // Returns the horizontal velocity of the car
     public double getXVelo() {
-        return vx;
+        return fleet.vx[index];
     }
 
     // Returns the vertical velocity of the car
     public double getYVelo() {
-        return vy;
+        return fleet.vy[index];
     }
 
     // Returns the speed of the car
     public double getSpeed() {
-        return speed;
+        return fleet.speed[index];
     }
 
     // Returns the direction of the car
 
     public char getDirection() {
-        return direction;
+        return (char) fleet.direction[index];
     }
 
     // Changes the horizontal velocity of the car given a double value
     public void setXVelo(double velX) {
-        vx = velX;
+        fleet.vx[index] = velX;
     }
 
     // Changes the vertical velocity of the car given a double value
     public void setYVelo(double velY) {
-        vy = velY;
+        fleet.vy[index] = velY;
     }
 
     // Changes the direction of the car given a character as input
     public void setDirection(char direction) {
-        this.direction = direction;
+        fleet.direction[index] = (byte) direction;
     }
 
     // Changes the speed of the car given a double as input
     public void setSpeed(double speed) {
-        this.speed = speed;
+        fleet.speed[index] = speed;
     }
 
     // Tests the other methods in the Car class
@@ -292,6 +238,8 @@ public class Car {
         Car a = new Car(25, 2, 0, 0.2,
                         new Color(0, 0, 255));
         Stoplight b = new Stoplight(50, 49, 8000, 1500);
+        SignalScheduler signals = new SignalScheduler(new Stoplight[] { b }, null);
+        double time = 0;
 
         while (true) {
             drawBackground(roads);
@@ -304,19 +252,14 @@ public class Car {
             StdDraw.show(20);
             StdDraw.clear();
 
-            double time = System.currentTimeMillis();
+            time += Simulation.TICK_MILLIS;
+            signals.advanceTo(time);
 
-            if ((time % (b.getTimeYellow() + b.getTimeRed() + b.getTimeRed()))
-                    < b.getTimeGreen()) {
-                b.changeLightGreen();
+            if (b.getPhase() == Stoplight.GREEN) {
+                clearRedlight(b);
                 a.accelerate(b);
             }
-            else if ((time % (b.getTimeYellow() + b.getTimeRed() + b.getTimeRed()))
-                    < (b.getTimeGreen() + b.getTimeYellow())) {
-                b.changeLightYellow();
-            }
-            else {
-                b.changeLightRed();
+            else if (b.getPhase() == Stoplight.RED) {
                 hitRedlight(b);
             }
 
@@ -0,0 +1,173 @@
+/* CityGenerator.java
+ *
+ *  This class writes a made up city in the Client input format so the
+ *  simulator can be run on far more cars, roads and stoplights than the
+ *  hand written environments have. A grid city is evenly spaced streets
+ *  running the whole map; a random city is streets of random lengths at
+ *  random places. The same seed always gives the same file, and the cars
+ *  are written as they are made, so only the roads are ever held in memory.
+ *
+ *  Compilation: javac-algs4 CityGenerator.java
+ *  Run: java-algs4 CityGenerator grid 40 400 1000000 7 > city.txt
+ *  (type, roads, stoplights, cars, seed and optionally a file to write to)
+ */
+
+import edu.princeton.cs.algs4.StdRandom;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+public class CityGenerator {
+
+    // Distance between neighboring streets of a grid city
+    private static final int SPACING = 20;
+
+    // Shortest street of a random city
+    private static final int MIN_LENGTH = 10;
+
+    // Speed the cars start at
+    private static final double SPEED = .2;
+
+    // Shortest and longest time a light is red or green in milliseconds
+    private static final int MIN_TIME = 1000;
+    private static final int MAX_TIME = 8000;
+
+    // Colors the cars are painted with
+    private static final int[][] COLORS = {
+            { 255, 0, 0 }, { 0, 0, 255 }, { 255, 255, 0 }, { 255, 255, 255 },
+            { 0, 200, 0 }, { 255, 128, 0 }, { 128, 0, 255 }, { 0, 0, 0 }
+    };
+
+    // Stores the roads as x center, y center, half width and half height
+    private final int[][] roads;
+
+    // Stores the side of the square map the city is on
+    private final int size;
+
+    // Constructor that lays out a grid or random city with the given number
+    // of roads using the given seed
+    public CityGenerator(boolean grid, int numRoads, long seed) {
+        if (numRoads < 1)
+            throw new IllegalArgumentException("a city needs at least one road");
+
+        StdRandom.setSeed(seed);
+        roads = new int[numRoads][];
+        int vertical = (numRoads + 1) / 2;
+        int horizontal = numRoads - vertical;
+        size = Math.max(RoadGrid.MIN_SIZE,
+                        SPACING * (Math.max(vertical, horizontal) + 1));
+
+        if (grid) {
+            for (int i = 0; i < vertical; i++)
+                roads[i] = street(true, SPACING * (i + 1), size / 2, size / 2 - 1);
+            for (int i = 0; i < horizontal; i++)
+                roads[vertical + i] = street(false, SPACING * (i + 1), size / 2,
+                                             size / 2 - 1);
+        }
+        else {
+            for (int i = 0; i < numRoads; i++) {
+                int across = 4 * StdRandom.uniformInt(1, size / 4);
+                int half = StdRandom.uniformInt(MIN_LENGTH / 2, size / 4 + 1);
+                int center = StdRandom.uniformInt(half + 1, size - half);
+                roads[i] = street(i < vertical, across, center, half);
+            }
+        }
+    }
+
+    // Returns a street one square wide, running up and down at the given x
+    // position or across at the given y position, centered along its length
+    private static int[] street(boolean vertical, int across, int center, int half) {
+        if (vertical)
+            return new int[] { across, center, 1, half };
+        return new int[] { center, across, half, 1 };
+    }
+
+    // Returns the side of the square map the city is on
+    public int size() {
+        return size;
+    }
+
+    // Returns the roads of the city
+    public int[][] roads() {
+        return roads;
+    }
+
+    // Writes the city with the given numbers of stoplights and cars
+    public void write(Writer writer, int numSL, int numAC) {
+        PrintWriter out = new PrintWriter(writer);
+        out.println(numAC);
+        out.println(roads.length);
+        out.println(numSL);
+
+        // The user car starts at the middle of the first road
+        int[] first = roads[0];
+        out.print(first[0] + " " + first[1] + " ");
+        out.print(first[2] == 1 ? "0 " + SPEED : SPEED + " 0");
+        out.println(" 167 167 167");
+        out.println();
+
+        for (int i = 0; i < numAC; i++) {
+            int[] road = roads[StdRandom.uniformInt(roads.length)];
+            double along = StdRandom.uniformDouble(-1, 1);
+            double speed = StdRandom.bernoulli() ? SPEED : -SPEED;
+            int[] color = COLORS[StdRandom.uniformInt(COLORS.length)];
+
+            if (road[2] == 1)
+                out.print(road[0] + " " + round(road[1] + along * (road[3] - 1))
+                                  + " 0 " + speed);
+            else
+                out.print(round(road[0] + along * (road[2] - 1)) + " " + road[1]
+                                  + " " + speed + " 0");
+            out.println(" " + color[0] + " " + color[1] + " " + color[2]);
+        }
+        out.println();
+
+        for (int[] road : roads)
+            out.println(road[0] + " " + road[1] + " " + road[2] + " " + road[3]);
+        out.println();
+
+        // Lights go on the squares of the roads, away from their ends
+        for (int i = 0; i < numSL; i++) {
+            int[] road = roads[StdRandom.uniformInt(roads.length)];
+            int px = road[0];
+            int py = road[1];
+            if (road[2] == 1)
+                py += StdRandom.uniformInt(-road[3] + 1, road[3]);
+            else
+                px += StdRandom.uniformInt(-road[2] + 1, road[2]);
+            int timeRed = StdRandom.uniformInt(MIN_TIME, MAX_TIME + 1);
+            int timeGreen = StdRandom.uniformInt(MIN_TIME, MAX_TIME + 1);
+            out.println(px + " " + py + " " + timeRed + " " + timeGreen);
+        }
+        out.flush();
+    }
+
+    // Rounds a position to three decimal places
+    private static double round(double v) {
+        return Math.round(v * 1000) / 1000.0;
+    }
+
+    // Writes a city of the type, number of roads, stoplights and cars and seed
+    // given as command line arguments to standard output or the named file
+    public static void main(String[] args) throws IOException {
+        boolean grid = args[0].equals("grid");
+        if (!grid && !args[0].equals("random"))
+            throw new IllegalArgumentException("city type must be grid or random");
+
+        int numRoads = Integer.parseInt(args[1]);
+        int numSL = Integer.parseInt(args[2]);
+        int numAC = Integer.parseInt(args[3]);
+        long seed = Long.parseLong(args[4]);
+
+        CityGenerator city = new CityGenerator(grid, numRoads, seed);
+        Writer file = args.length > 5 ? new FileWriter(args[5])
+                                      : new OutputStreamWriter(System.out);
+        try (Writer writer = new BufferedWriter(file, 1 << 16)) {
+            city.write(writer, numSL, numAC);
+        }
+    }
+}
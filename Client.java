@@ -7,125 +7,68 @@
  *
  *   Compile: javac-algs4 Client.java
  *   Run: java-algs4 Client < ./Environment-Files/Environment1.txt or
- *   java-introcs Client < ./Environment-Files/Environment2.txt
+ *   java-introcs Client < ./Environment-Files/Environment2.txt or
+ *   java-algs4 Client env1.sim to load a scenario file, or
+ *   java-algs4 Client env1.sim run.log to also record the run to an event log
+ *   that java-algs4 EventLog env1.sim run.log replays. Adding
+ *   -Dmetrics=metrics.txt times every phase of the loop into that file and
+ *   -DtickRate=100 ticks twice as fast as real time. -DrenderThreads=4 paints
+ *   the pixels of each frame on 4 threads instead of through Java2D
  */
 
-import edu.princeton.cs.algs4.StdDraw;
-import edu.princeton.cs.algs4.StdIn;
+import edu.princeton.cs.algs4.In;
 
-import java.awt.Color;
+import java.io.IOException;
 
 public class Client {
 
     // This creates the car simulation
-    public static void main(String[] args) {
-
-        // Reads number of autonomous cars from standard input
-        int numAC = StdIn.readInt();
-
-        // Reads number of roads from standard input
-        int numRoads = StdIn.readInt();
-
-        // Reads number of stoplights from standard input
-        int numSL = StdIn.readInt();
-
-        // Declares 2D array of roads
-        int[][] roads = new int[numRoads][4];
-
-        // Declares array of autonomous cars
-        Car[] cars = new Car[numAC];
-
-        // Declares array of stoplights
-        Stoplight[] stoplights = new Stoplight[numSL];
-
-        // Initializes user powered car's initial position
-        UserCar uc = new UserCar(StdIn.readDouble(), StdIn.readDouble(),
-                                 StdIn.readDouble(), StdIn.readDouble(),
-                                 new Color(StdIn.readInt(), StdIn.readInt(), StdIn.readInt()));
-
-        // Initializes autonomous cars array
-        for (int i = 0; i < numAC; i++) {
-            cars[i] = new Car(StdIn.readDouble(), StdIn.readDouble(),
-                              StdIn.readDouble(), StdIn.readDouble(),
-                              new Color(StdIn.readInt(), StdIn.readInt(), StdIn.readInt()));
-        }
-
-        // Initializes 2D roads array
-        for (int i = 0; i < numRoads; i++) {
-            for (int j = 0; j < 4; j++)
-                roads[i][j] = StdIn.readInt();
-        }
-
-        // Initializes stoplights array
-        for (int i = 0; i < numSL; i++) {
-            stoplights[i] = new Stoplight(StdIn.readInt(), StdIn.readInt(),
-                                          StdIn.readInt(), StdIn.readInt());
+    public static void main(String[] args) throws IOException {
+
+        // Reads the cars, roads and stoplights from the file named on the
+        // command line, or from standard input if there is none
+        Simulation sim = args.length > 0 ? Simulation.open(args[0])
+                                         : Simulation.read(new In());
+
+        // Records the keys and stoplights to the log named on the command line,
+        // flushing it when the window is closed
+        if (args.length > 1) {
+            sim.record(new EventLog.Recorder(args[1], sim.checksum()));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                synchronized (sim) {
+                    sim.stopRecording();
+                }
+            }));
         }
 
-        // Initializes standard draw
-        StdDraw.enableDoubleBuffering();
-        Car.drawBackground(roads);
-
-        // Creates keyboard object
-        Keyboard k = new Keyboard();
-
-        // Simulation loop
-        while (true) {
-
-            // Checks if there was input for the user car and adjusts the car as such
-            if (k.wasNextKeyPressed()) {
-                uc.checkInput(k);
-            }
-
-            // Draws the road system
-            Car.drawBackground(roads);
-
-            // Draws the stoplights
-            for (int i = 0; i < numSL; i++) {
-                stoplights[i].drawStoplight();
-            }
-
-            // Draws the user car and updates its position
-            uc.draw();
-            uc.updatePosition(2);
-
-            // Draws the autonomous cars and updates their positions
-            for (int i = 0; i < numAC; i++) {
-                cars[i].draw();
-                cars[i].makeTurn();
-                cars[i].updatePosition(2);
-            }
-
-            // Shows the cars in the standard draw window
-            StdDraw.show(20);
-            StdDraw.clear();
-
-            // Checks the time to see which stoplights should be red, green or yellow
-            double time = System.currentTimeMillis();
-
-            for (int i = 0; i < numSL; i++) {
-                if ((time % (stoplights[i].getTimeYellow() + stoplights[i].getTimeRed() +
-                        stoplights[i].getTimeRed())) < stoplights[i].getTimeGreen()) {
-                    stoplights[i].changeLightGreen();
-                    for (int j = 0; j < numAC; j++) {
-                        cars[j].accelerate(stoplights[i]);
-                    }
-                }
-                else if ((time % (stoplights[i].getTimeYellow() +
-                        stoplights[i].getTimeRed() + stoplights[i].getTimeRed()))
-                        < (stoplights[i].getTimeGreen() + stoplights[i].getTimeYellow())) {
-                    stoplights[i].changeLightYellow();
-                }
-                else {
-                    stoplights[i].changeLightRed();
-                    Car.hitRedlight(stoplights[i]);
+        // Times every phase of the loop if a metrics file is given, writing it
+        // once a minute and again when the window is closed
+        String metricsFile = System.getProperty("metrics");
+        if (metricsFile != null) {
+            TickMetrics metrics = new TickMetrics(metricsFile);
+            sim.setMetrics(metrics);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                synchronized (sim) {
+                    metrics.dump();
                 }
-
-            }
-
-            // Stops the autonomous cars if they go off the track
-            for (int i = 0; i < numAC; i++)
-                cars[i].stop();
+            }));
         }
+
+        // Draws the newest frame on a thread of its own at the display rate
+        // (painting the pixels on -DrenderThreads threads if given) and lets
+        // the keyboard drive the user car
+        FrameBuffer frames = new FrameBuffer();
+        MapView view = new MapView(sim.getRoads(), sim.getGrid(),
+                                   Integer.getInteger("renderThreads", 0));
+        view.open();
+        new RenderLoop(view, frames, RenderLoop.FRAMES_PER_SECOND).start();
+        sim.attachKeyboard(new Keyboard());
+
+        // Simulation loop, ticking at a fixed rate (-DtickRate=100 runs it
+        // twice as fast as real time)
+        double rate = Simulation.TICKS_PER_SECOND;
+        if (System.getProperty("tickRate") != null)
+            rate = Double.parseDouble(System.getProperty("tickRate"));
+        sim.runAtRate(rate, frames);
     }
 }
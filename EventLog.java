@@ -0,0 +1,244 @@
+/* EventLog.java
+ *
+ *  This class records a run of the simulation to a compact binary log so it
+ *  can be played back exactly. Everything else about a run already follows
+ *  from the environment and the simulated clock, so the log only holds a
+ *  hash of the starting state, every key the user car was given with the
+ *  tick it came in on, every stoplight change, and a checksum of the whole
+ *  world every CHECKPOINT_TICKS ticks. Records are only ever appended, and
+ *  the log is flushed at every checkpoint, so a run that is killed still
+ *  leaves a log that replays up to its last checkpoint.
+ *
+ *  A replay runs the log headlessly as fast as the CPU allows, feeding the
+ *  keys in on the same ticks and checking the stoplight changes and the
+ *  checkpoints against what it simulates.
+ *
+ *    header      int magic, int version, long hash of the starting state
+ *    records     byte type, varint ticks since the previous record, then
+ *                KEY: char key
+ *                SIGNAL: varint light, byte phase
+ *                CHECKPOINT: long checksum
+ *
+ *  Compilation: javac-algs4 EventLog.java
+ *  Run: java-algs4 EventLog ./Environment-Files/Environment1.txt run.log
+ *  (replays run.log, or records and replays a scripted run if it is left out)
+ */
+
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public class EventLog {
+
+    // Marks the start of an event log ("DLOG")
+    public static final int MAGIC = 0x444C4F47;
+
+    // Version of the format written
+    public static final int VERSION = 1;
+
+    // Number of ticks between checksums of the world
+    public static final int CHECKPOINT_TICKS = 1000;
+
+    // Types of record
+    private static final int KEY = 1;
+    private static final int SIGNAL = 2;
+    private static final int CHECKPOINT = 3;
+
+    // Writes the events of one run to a log
+    public static class Recorder {
+
+        // Stores the stream the log is written to
+        private final DataOutputStream out;
+
+        // Stores the tick of the last record written
+        private long lastTick;
+
+        // Constructor that starts a log in the given file for a run whose
+        // starting state has the given hash
+        public Recorder(String filename, long scenarioHash) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(filename)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(scenarioHash);
+        }
+
+        // Records a key given to the user car before the given tick
+        public void key(long tick, char c) {
+            try {
+                start(KEY, tick);
+                out.writeChar(c);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Records a stoplight changing to the given phase during the given tick
+        public void signal(long tick, int light, int phase) {
+            try {
+                start(SIGNAL, tick);
+                writeVarLong(out, light);
+                out.writeByte(phase);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Records the checksum of the world after the given number of ticks
+        // and flushes the log
+        public void checkpoint(long tick, long checksum) {
+            try {
+                start(CHECKPOINT, tick);
+                out.writeLong(checksum);
+                out.flush();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Flushes and closes the log
+        public void close() {
+            try {
+                out.close();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Writes the type of a record and its tick
+        private void start(int type, long tick) throws IOException {
+            out.writeByte(type);
+            writeVarLong(out, tick - lastTick);
+            lastTick = tick;
+        }
+    }
+
+    // Writes a non-negative number seven bits at a time, low bits first
+    private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    // Reads a number written by writeVarLong
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+        }
+    }
+
+    // Replays the log in the given file on a simulation built from the same
+    // environment, printing every way the replay differs from the log, and
+    // returns the number of differences
+    public static int replay(Simulation sim, String filename) throws IOException {
+        int mismatches = 0;
+        int checkpoints = 0;
+        Stoplight[] stoplights = sim.getStoplights();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(filename)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(filename + " is not an event log");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException(filename + " has unknown version " + version);
+            if (in.readLong() != sim.checksum()) {
+                StdOut.println("the log was recorded from a different environment");
+                return 1;
+            }
+
+            long tick = 0;
+            while (true) {
+                int type;
+                try {
+                    type = in.readUnsignedByte();
+                }
+                catch (EOFException e) {
+                    break;
+                }
+                tick += readVarLong(in);
+
+                if (type == KEY) {
+                    char c = in.readChar();
+                    runTo(sim, tick);
+                    sim.input(c);
+                }
+                else if (type == SIGNAL) {
+                    int light = (int) readVarLong(in);
+                    int phase = in.readByte();
+                    runTo(sim, tick + 1);
+                    if (stoplights[light].getPhase() != phase) {
+                        StdOut.printf("tick %d: light %d is %d, the log has %d%n",
+                                      tick, light, stoplights[light].getPhase(), phase);
+                        mismatches++;
+                    }
+                }
+                else if (type == CHECKPOINT) {
+                    long checksum = in.readLong();
+                    runTo(sim, tick);
+                    checkpoints++;
+                    if (sim.checksum() != checksum) {
+                        StdOut.println("tick " + tick + ": the world differs");
+                        mismatches++;
+                    }
+                }
+                else
+                    throw new IOException(filename + " has a bad record type " + type);
+            }
+        }
+
+        StdOut.printf("replayed %d ticks, %d checkpoints checked, %d differences%n",
+                      sim.getTicks(), checkpoints, mismatches);
+        return mismatches;
+    }
+
+    // Runs the simulation until it has simulated the given number of ticks
+    private static void runTo(Simulation sim, long tick) {
+        while (sim.getTicks() < tick)
+            sim.tick();
+    }
+
+    // Replays the log named by the second argument on the environment named by
+    // the first, or without a log records a scripted run and replays it
+    public static void main(String[] args) throws IOException {
+        if (args.length > 1) {
+            replay(Simulation.open(args[0]), args[1]);
+            return;
+        }
+
+        File log = File.createTempFile("run", ".log");
+        log.deleteOnExit();
+        Simulation sim = Simulation.open(args[0]);
+        sim.record(new Recorder(log.getPath(), sim.checksum()));
+        char[] script = { 'u', 'r', 's', 'a', 'd', 'l' };
+        for (int i = 0; i < 5500; i++) {
+            if (i % 700 == 0)
+                sim.input(script[(i / 700) % script.length]);
+            sim.tick();
+        }
+        sim.stopRecording();
+        StdOut.println("recorded " + log.length() + " bytes");
+
+        int mismatches = replay(Simulation.open(args[0]), log.getPath());
+        StdOut.println("differences: " + mismatches + " (expected 0)");
+    }
+}
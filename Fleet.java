@@ -0,0 +1,597 @@
+/* Fleet.java
+ *
+ *  This class stores a fleet of cars as parallel primitive arrays (one array
+ *  per field) instead of one object per car, so a tick over the whole fleet
+ *  walks memory in order. Colors are kept in a shared palette and each car
+ *  only stores its palette index. A Car is a lightweight view of one index.
+ *
+ *  Compilation: javac-algs4 Fleet.java
+ *  Run: java-algs4 Fleet 1000000
+ */
+
+import edu.princeton.cs.algs4.StdDraw;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.awt.Color;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class Fleet {
+
+    // Bytes each car takes up in the fleet arrays: five doubles,
+    // a direction byte, a palette index and a lane segment
+    public static final int BYTES_PER_CAR = 5 * Double.BYTES + 1 + Character.BYTES
+            + Integer.BYTES;
+
+    // Sets the road width (matched in all input files)
+    private static final int ROAD_WIDTH = 2;
+
+    // Headings of cars the turn table has no entry for
+    private static final int STOPPED = -1;
+    private static final int DIAGONAL = -2;
+
+    // Radius (half the side of the square) every car is drawn with
+    public static final double RAD = .5;
+
+    // Stores the horizontal-positions of the cars
+    double[] posX;
+
+    // Stores the vertical-positions of the cars
+    double[] posY;
+
+    // Stores the horizontal-velocities of the cars
+    double[] vx;
+
+    // Stores the vertical-velocities of the cars
+    double[] vy;
+
+    // Stores the speed each car had when it was last stopped
+    double[] speed;
+
+    // Stores what direction each car will accelerate in ('v', 'h' or 0)
+    byte[] direction;
+
+    // Stores the index of each car's color in the palette
+    char[] colorIndex;
+
+    // Stores the lane segment of the cell each car was last seen on (-1 if none)
+    private int[] lane;
+
+    // Stores the distinct colors of the fleet
+    private Color[] palette = new Color[4];
+
+    // Maps a color to its index in the palette
+    private final HashMap<Color, Integer> paletteIndex = new HashMap<Color, Integer>();
+
+    // Stores the number of colors in the palette
+    private int paletteSize;
+
+    // Stores the number of cars in the fleet
+    private int size;
+
+    // Stores the roads the fleet drives on (null until it is given some, so
+    // fleets never share roads by accident)
+    private RoadGrid road;
+
+    // Stores the cells red lights block for cars that check them as they
+    // check the roads (null if the stoplights are checked separately)
+    private SignalMask blocked;
+
+    // Stores what to do on each road cell (null to always probe the grid)
+    private TurnTable turns;
+
+    // Constructor that makes room for the given number of cars
+    public Fleet(int capacity) {
+        capacity = Math.max(capacity, 1);
+        posX = new double[capacity];
+        posY = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        speed = new double[capacity];
+        direction = new byte[capacity];
+        colorIndex = new char[capacity];
+        lane = new int[capacity];
+    }
+
+    // Adds a car given its horizontal and vertical positions and velocities as
+    // well as its color and returns its index in the fleet
+    public int add(double startingX, double startingY, double veloX, double veloY,
+                   Color c) {
+        if (size == posX.length)
+            resize(2 * size);
+
+        posX[size] = startingX;
+        posY[size] = startingY;
+        vx[size] = veloX;
+        vy[size] = veloY;
+        colorIndex[size] = (char) colorIndex(c);
+        lane[size] = -1;
+        return size++;
+    }
+
+    // Adds a copy of the car at index i of another fleet, with its speed and
+    // direction, and returns its index in this fleet
+    public int add(Fleet from, int i) {
+        int j = add(from.posX[i], from.posY[i], from.vx[i], from.vy[i], from.color(i));
+        speed[j] = from.speed[i];
+        direction[j] = from.direction[i];
+        return j;
+    }
+
+    // Removes the car at index i by moving the last car of the fleet into its
+    // place, so the last car's index becomes i
+    public void remove(int i) {
+        int last = --size;
+        posX[i] = posX[last];
+        posY[i] = posY[last];
+        vx[i] = vx[last];
+        vy[i] = vy[last];
+        speed[i] = speed[last];
+        direction[i] = direction[last];
+        colorIndex[i] = colorIndex[last];
+        lane[i] = lane[last];
+    }
+
+    // Adds n cars at once, reading their horizontal and vertical positions
+    // and velocities from the given buffers and their colors as indices into
+    // the given palette
+    public void addAll(int n, DoubleBuffer startingX, DoubleBuffer startingY,
+                       DoubleBuffer veloX, DoubleBuffer veloY,
+                       CharBuffer colors, Color[] colorPalette) {
+        if (size + n > posX.length)
+            resize(Math.max(size + n, 2 * size));
+
+        startingX.get(posX, size, n);
+        startingY.get(posY, size, n);
+        veloX.get(vx, size, n);
+        veloY.get(vy, size, n);
+        colors.get(colorIndex, size, n);
+        Arrays.fill(lane, size, size + n, -1);
+
+        // The file's palette indices can be used as they are unless this fleet
+        // already gave some of its colors other indices
+        boolean same = true;
+        char[] remap = new char[colorPalette.length];
+        for (int c = 0; c < colorPalette.length; c++) {
+            remap[c] = (char) colorIndex(colorPalette[c]);
+            same &= remap[c] == c;
+        }
+        if (!same) {
+            for (int i = size; i < size + n; i++)
+                colorIndex[i] = remap[colorIndex[i]];
+        }
+
+        size += n;
+    }
+
+    // Returns a copy of the fleet with arrays of its own, on the same roads
+    // and with the same palette, so it can be run apart from this one
+    public Fleet copy() {
+        Fleet f = new Fleet(size);
+        System.arraycopy(posX, 0, f.posX, 0, size);
+        System.arraycopy(posY, 0, f.posY, 0, size);
+        System.arraycopy(vx, 0, f.vx, 0, size);
+        System.arraycopy(vy, 0, f.vy, 0, size);
+        System.arraycopy(speed, 0, f.speed, 0, size);
+        System.arraycopy(direction, 0, f.direction, 0, size);
+        System.arraycopy(colorIndex, 0, f.colorIndex, 0, size);
+        Arrays.fill(f.lane, 0, size, -1);
+        for (int c = 0; c < paletteSize; c++)
+            f.colorIndex(palette[c]);
+
+        f.size = size;
+        f.road = road;
+        f.blocked = blocked;
+        f.turns = turns;
+        return f;
+    }
+
+    // Returns the number of colors in the palette
+    public int paletteSize() {
+        return paletteSize;
+    }
+
+    // Returns the color at the given index of the palette
+    public Color paletteColor(int c) {
+        return palette[c];
+    }
+
+    // Returns the palette index of the car at the given index
+    public int paletteIndexOf(int i) {
+        return colorIndex[i];
+    }
+
+    // Returns the palette index of the given color, adding it if it is new
+    public int colorIndex(Color c) {
+        Integer index = paletteIndex.get(c);
+        if (index != null)
+            return index;
+
+        if (paletteSize == Character.MAX_VALUE)
+            throw new IllegalArgumentException("too many distinct car colors");
+        if (paletteSize == palette.length)
+            palette = Arrays.copyOf(palette, 2 * paletteSize);
+
+        palette[paletteSize] = c;
+        paletteIndex.put(c, paletteSize);
+        return paletteSize++;
+    }
+
+    // Moves the fleet arrays into arrays of the given capacity
+    private void resize(int capacity) {
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        direction = Arrays.copyOf(direction, capacity);
+        colorIndex = Arrays.copyOf(colorIndex, capacity);
+        lane = Arrays.copyOf(lane, capacity);
+    }
+
+    // Changes the roads the fleet drives on (forgetting any turn table,
+    // which belongs to the old roads). Red lights are then only checked by
+    // stop with a signal snapshot
+    public void setRoad(RoadGrid road) {
+        setRoad(road, null);
+    }
+
+    // Changes the roads the fleet drives on and the cells red lights block
+    // on them, for cars that check the lights as they check the roads
+    void setRoad(RoadGrid road, SignalMask blocked) {
+        this.road = road;
+        this.blocked = blocked;
+        turns = null;
+    }
+
+    // Lets the cars read what to do on each cell of the roads they drive on
+    // from the given turn table instead of probing the grid every tick. The
+    // table's red cells must be kept the same as the signals given to stop
+    public void setTurnTable(TurnTable turns) {
+        this.turns = turns;
+        Arrays.fill(lane, -1);
+    }
+
+    // Returns the turn table the cars read (null if they probe the grid)
+    public TurnTable getTurnTable() {
+        return turns;
+    }
+
+    // Returns the roads the fleet drives on
+    public RoadGrid getRoad() {
+        return road;
+    }
+
+    // Returns the number of cars in the fleet
+    public int size() {
+        return size;
+    }
+
+    // Returns a Car view of the car at the given index
+    public Car car(int i) {
+        return new Car(this, i);
+    }
+
+    // Returns the color of the car at the given index
+    public Color color(int i) {
+        return palette[colorIndex[i]];
+    }
+
+    // Updates the position of the car at index i given a time step (deltaT)
+    public void updatePosition(int i, double deltaT) {
+        posX[i] += vx[i] * deltaT;
+        posY[i] += vy[i] * deltaT;
+    }
+
+    // Turns the car at index i right depending on its current trajectory
+    public void turnRight(int i) {
+        if (vy[i] != 0) {
+            vx[i] = vy[i];
+            vy[i] = 0;
+        }
+
+        else if (vx[i] != 0) {
+            vy[i] = -1 * vx[i];
+            vx[i] = 0;
+        }
+    }
+
+    // Turns the car at index i left depending on its current trajectory
+    public void turnLeft(int i) {
+        if (vy[i] != 0) {
+            vx[i] = -1 * vy[i];
+            vy[i] = 0;
+        }
+
+        else if (vx[i] != 0) {
+            vy[i] = vx[i];
+            vx[i] = 0;
+        }
+    }
+
+    // Draws the car at index i
+    public void draw(int i) {
+        StdDraw.setPenColor(palette[colorIndex[i]]);
+        StdDraw.filledSquare(posX[i], posY[i], RAD);
+    }
+
+    // Checks if the given x and y positions are on the road
+    public boolean onRoad(int py, int px) {
+        return road.get(py, px);
+    }
+
+    // Checks if the given x and y positions are on the road, skipping the
+    // bounds check when the caller knows the cell is inside the map
+    private boolean isRoad(int py, int px, boolean inside) {
+        return inside ? road.getUnchecked(py, px) : road.get(py, px);
+    }
+
+    // Checks if the given x and y positions are blocked by a red light, for
+    // cars that check the lights as they stop (turns only look at the roads,
+    // so a red light ahead is never taken for a dead end)
+    private boolean isRed(int py, int px) {
+        return blocked != null && blocked.isBlocked(py, px);
+    }
+
+    // If the car at index i hits a dead end, it will make a turn in the
+    // direction where there is road or stop
+    public void makeTurn(int i) {
+        int heading = heading(i);
+        if (heading == STOPPED)
+            return;
+
+        // The table only covers positions of at least ROAD_WIDTH, where taking
+        // ROAD_WIDTH from a position takes it from the cell too (below that
+        // the probes truncate toward zero instead of down)
+        int cell = heading == DIAGONAL || posX[i] < ROAD_WIDTH || posY[i] < ROAD_WIDTH
+                ? -1 : cellOf(i, heading);
+        if (cell < 0) {
+            probeTurn(i);
+            return;
+        }
+
+        switch (turns.turn(cell, heading)) {
+            case TurnTable.LEFT:
+                turnLeft(i);
+                break;
+            case TurnTable.RIGHT:
+                turnRight(i);
+                break;
+            case TurnTable.HALT:
+                vx[i] = 0;
+                vy[i] = 0;
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Returns the turn table heading of the car at index i, STOPPED if it is
+    // not moving or DIAGONAL if there is no table or it moves diagonally
+    private int heading(int i) {
+        double dx = vx[i];
+        double dy = vy[i];
+        if (dx == 0 && dy == 0)
+            return STOPPED;
+        if (turns == null || (dx != 0 && dy != 0))
+            return DIAGONAL;
+        if (dy == 0)
+            return dx > 0 ? TurnTable.EAST : TurnTable.WEST;
+        return dy > 0 ? TurnTable.NORTH : TurnTable.SOUTH;
+    }
+
+    // Returns the turn table index of the cell the car at index i is on, along
+    // the row or column its heading drives down (-1 if the cell is not road).
+    // The segment is remembered, so it is only looked up again once the car
+    // leaves it or turns onto the other axis
+    private int cellOf(int i, int heading) {
+        LaneGraph lanes = turns.lanes();
+        boolean across = heading == TurnTable.EAST || heading == TurnTable.WEST;
+        int px = (int) posX[i];
+        int py = (int) posY[i];
+        int along = across ? px : py;
+        int s = lane[i];
+
+        if (s < 0 || lanes.isRow(s) != across || lanes.lane(s) != (across ? py : px)
+                || !lanes.contains(s, along)) {
+            s = across ? lanes.rowSegment(py, px) : lanes.columnSegment(px, py);
+            lane[i] = s;
+            if (s < 0)
+                return -1;
+        }
+        return turns.cell(s, along);
+    }
+
+    // Turns or stops the car at index i if the grid shows it is at a dead end
+    private void probeTurn(int i) {
+        double x = posX[i];
+        double y = posY[i];
+
+        // Cars at least ROAD_WIDTH inside the map can skip the bounds checks
+        int cx = (int) x;
+        int cy = (int) y;
+        boolean inside = road.contains(cy - ROAD_WIDTH, cx - ROAD_WIDTH)
+                && road.contains(cy + ROAD_WIDTH, cx + ROAD_WIDTH);
+
+        if (!onRoad((int) (y + ROAD_WIDTH), (int) (x)) && vy[i] > 0) {
+            if (isRoad((int) y, (int) (x - ROAD_WIDTH), inside)) {
+                turnLeft(i);
+            }
+            else if (isRoad((int) y, (int) (x + ROAD_WIDTH), inside)) {
+                turnRight(i);
+            }
+            else {
+                stop(i, (int) y + ROAD_WIDTH, (int) x);
+            }
+        }
+
+        else if (!onRoad((int) (y), (int) (x + ROAD_WIDTH)) && vx[i] > 0) {
+            if (isRoad((int) (y + ROAD_WIDTH), (int) x, inside)) {
+                turnLeft(i);
+            }
+            else if (isRoad((int) (y - ROAD_WIDTH), (int) x, inside)) {
+                turnRight(i);
+            }
+            else {
+                stop(i, (int) y, (int) x + ROAD_WIDTH);
+            }
+        }
+
+        else if (!onRoad((int) (y), (int) (x - ROAD_WIDTH)) && vx[i] < 0) {
+            if (isRoad((int) (y + ROAD_WIDTH), (int) x, inside)) {
+                turnRight(i);
+            }
+            else if (isRoad((int) (y - ROAD_WIDTH), (int) x, inside)) {
+                turnLeft(i);
+            }
+            else {
+                stop(i, (int) y, (int) x - ROAD_WIDTH);
+            }
+        }
+
+        else if (!onRoad((int) (y - ROAD_WIDTH), (int) (x)) && vy[i] < 0) {
+            if (isRoad((int) y, (int) (x + ROAD_WIDTH), inside)) {
+                turnLeft(i);
+            }
+            else if (isRoad((int) y, (int) (x - ROAD_WIDTH), inside)) {
+                turnRight(i);
+            }
+            else {
+                stop(i, (int) y - ROAD_WIDTH, (int) x);
+            }
+        }
+    }
+
+    // Allows the car at index i to accelerate after stoplight turns green
+    public void accelerate(int i, Stoplight sl) {
+        if (Car.distanceTo(posX[i], posY[i], sl.getHorizPosition(),
+                           sl.getVertPosition()) < 2)
+            resume(i);
+    }
+
+    // Starts the car at index i again if it is stopped, at the speed and in
+    // the direction it had when it stopped
+    public void resume(int i) {
+        if (vy[i] == 0 && vx[i] == 0) {
+            if (direction[i] == 'v')
+                vy[i] = speed[i];
+            else if (direction[i] == 'h')
+                vx[i] = speed[i];
+        }
+    }
+
+    // Checks if the car at index i is stopped
+    public boolean isStopped(int i) {
+        return vx[i] == 0 && vy[i] == 0;
+    }
+
+    // If the car at index i is off or will go off the road it will stop
+    public void stop(int i, int py, int px) {
+        if (!onRoad(py, px)) {
+            vx[i] = 0;
+            vy[i] = 0;
+        }
+        else
+            stop(i);
+    }
+
+    // Stops the car at index i if it goes off the road or onto a red light
+    public void stop(int i) {
+        int py = (int) posY[i];
+        int px = (int) posX[i];
+        if (!onRoad(py, px) || isRed(py, px))
+            brake(i);
+    }
+
+    // Stops the car at index i if it goes off the road or onto a cell
+    // blocked by a red light in the given signal snapshot
+    public void stop(int i, SignalState signals) {
+        int heading = heading(i);
+        if (heading == STOPPED)
+            return;
+        if (heading != DIAGONAL) {
+            int cell = cellOf(i, heading);
+            if (cell < 0 || turns.isRed(cell))
+                brake(i);
+            return;
+        }
+
+        int py = (int) posY[i];
+        int px = (int) posX[i];
+        if (!onRoad(py, px) || signals.isRed(py, px))
+            brake(i);
+    }
+
+    // Stops the car at index i, remembering its speed and direction so it
+    // can accelerate again
+    private void brake(int i) {
+        if (vy[i] != 0) {
+            speed[i] = vy[i];
+            direction[i] = 'v';
+        }
+        else if (vx[i] != 0) {
+            speed[i] = vx[i];
+            direction[i] = 'h';
+        }
+
+        vy[i] = 0;
+        vx[i] = 0;
+    }
+
+    /***************************************************************************
+     *  Memory measurement.
+     ***************************************************************************/
+
+    // Mirrors the fields every Car object carried before the fleet arrays
+    private static class LegacyCar {
+        private final int roadWidth = ROAD_WIDTH;
+        private double posX, posY, vx, vy, speed, rad;
+        private char direction;
+        private Color color;
+
+        private LegacyCar(double posX, double posY, Color color) {
+            this.posX = posX;
+            this.posY = posY;
+            this.rad = RAD;
+            this.color = color;
+        }
+    }
+
+    // Returns the bytes of heap in use after asking for a garbage collection
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Measures the bytes per car of the fleet arrays against one Car object
+    // (with its own Color) per car, for the number of cars given as an argument
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        long before = usedMemory();
+        LegacyCar[] legacy = new LegacyCar[n];
+        for (int i = 0; i < n; i++)
+            legacy[i] = new LegacyCar(i, i, new Color(i % 256, 0, 0));
+        long legacyBytes = usedMemory() - before;
+
+        // Reads the array after measuring it so it cannot be collected early
+        double checksum = legacy[n - 1].posX;
+        legacy = null;
+
+        before = usedMemory();
+        Fleet fleet = new Fleet(n);
+        for (int i = 0; i < n; i++)
+            fleet.add(i, i, 0, 0.2, new Color(i % 256, 0, 0));
+        long fleetBytes = usedMemory() - before;
+        checksum += fleet.posX[n - 1];
+
+        StdOut.printf("Car objects: %.1f bytes per car%n", (double) legacyBytes / n);
+        StdOut.printf("Fleet arrays: %.1f bytes per car (%d in the arrays)%n",
+                      (double) fleetBytes / n, BYTES_PER_CAR);
+        StdOut.println("checksum: " + checksum);
+    }
+}
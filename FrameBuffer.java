@@ -0,0 +1,201 @@
+/* FrameBuffer.java
+ *
+ *  This class hands frames of the world from the thread that simulates it
+ *  to the thread that draws it without either one waiting on the other. A
+ *  frame holds where every car was the tick before and where it is now, so
+ *  the drawing thread can put the cars anywhere in between. There are three
+ *  frames: the simulation fills one, the drawing thread reads another, and
+ *  the newest finished one waits in the middle to be swapped with either
+ *  of them. A frame is never written while it is in the middle or being
+ *  read, so no locks are needed and nothing is allocated once the frames
+ *  are as large as the fleet.
+ *
+ *  Compilation: javac-algs4 FrameBuffer.java
+ *  Run: java-algs4 FrameBuffer < ./Environment-Files/Environment1.txt
+ */
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.awt.Color;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class FrameBuffer {
+
+    // Is what the world looked like after one tick
+    public static class Frame {
+
+        // Stores the tick the frame was taken after (-1 before the first)
+        long tick = -1;
+
+        // Stores the wall clock in nanoseconds when this frame and the one
+        // before it were published
+        long publishedNanos;
+        long lastPublishedNanos;
+
+        // Stores where the user car was the tick before and is now, and its color
+        double ucPrevX, ucPrevY, ucX, ucY;
+        Color ucColor;
+
+        // Stores the number of cars
+        int size;
+
+        // Stores where every car was the tick before and is now
+        double[] prevX = new double[0];
+        double[] prevY = new double[0];
+        double[] posX = new double[0];
+        double[] posY = new double[0];
+
+        // Stores every car's color as an index into the palette (cars never
+        // change color, so these are only copied when the fleet changes size)
+        char[] colorIndex = new char[0];
+        Color[] palette = new Color[0];
+
+        // Stores where the stoplights are and their colors now
+        int[] lightX = new int[0];
+        int[] lightY = new int[0];
+        Color[] lightColor = new Color[0];
+
+        // Stores whether the frame is newer than the one being read
+        private volatile boolean fresh;
+
+        // Returns the tick the frame was taken after
+        public long getTick() {
+            return tick;
+        }
+
+        // Returns how far between the last two ticks to draw the cars at the
+        // given wall clock time, from 0 at the tick before to 1 at this one,
+        // going by how long apart the two ticks were published
+        public double alpha(long nowNanos) {
+            long period = publishedNanos - lastPublishedNanos;
+            if (period <= 0)
+                return 1;
+            double alpha = (double) (nowNanos - publishedNanos) / period;
+            return Math.min(1, Math.max(0, alpha));
+        }
+
+        // Fills the frame from the world after a tick, taking where the cars
+        // were before it from the last frame published (null if none was)
+        private void capture(Simulation sim, Frame last) {
+            Fleet cars = sim.getCars();
+            UserCar uc = sim.getUserCar();
+            Stoplight[] stoplights = sim.getStoplights();
+            int n = cars.size();
+            boolean same = last != null && last.size == n;
+
+            if (posX.length != n) {
+                prevX = new double[n];
+                prevY = new double[n];
+                posX = new double[n];
+                posY = new double[n];
+                colorIndex = new char[n];
+            }
+            if (size != n || palette.length != cars.paletteSize()) {
+                System.arraycopy(cars.colorIndex, 0, colorIndex, 0, n);
+                palette = new Color[cars.paletteSize()];
+                for (int c = 0; c < palette.length; c++)
+                    palette[c] = cars.paletteColor(c);
+            }
+            size = n;
+
+            System.arraycopy(same ? last.posX : cars.posX, 0, prevX, 0, n);
+            System.arraycopy(same ? last.posY : cars.posY, 0, prevY, 0, n);
+            System.arraycopy(cars.posX, 0, posX, 0, n);
+            System.arraycopy(cars.posY, 0, posY, 0, n);
+
+            ucX = uc.getXPosition();
+            ucY = uc.getYPosition();
+            ucPrevX = last != null ? last.ucX : ucX;
+            ucPrevY = last != null ? last.ucY : ucY;
+            ucColor = uc.getColor();
+
+            if (lightColor.length != stoplights.length) {
+                lightX = new int[stoplights.length];
+                lightY = new int[stoplights.length];
+                lightColor = new Color[stoplights.length];
+                for (int i = 0; i < stoplights.length; i++) {
+                    lightX[i] = stoplights[i].getHorizPosition();
+                    lightY[i] = stoplights[i].getVertPosition();
+                }
+            }
+            for (int i = 0; i < stoplights.length; i++)
+                lightColor[i] = stoplights[i].getColor();
+
+            tick = sim.getTicks();
+            lastPublishedNanos = last != null ? last.publishedNanos : 0;
+            publishedNanos = System.nanoTime();
+        }
+    }
+
+    // Stores the frame the simulation fills in (only touched by its thread)
+    private Frame back = new Frame();
+
+    // Stores the newest finished frame, or the last one read
+    private final AtomicReference<Frame> middle = new AtomicReference<Frame>(new Frame());
+
+    // Stores the frame being read (only touched by the drawing thread)
+    private Frame front = new Frame();
+
+    // Stores the last frame published (only touched by the simulation's thread)
+    private Frame last;
+
+    // Fills a frame from the simulation after a tick and makes it the newest
+    // one. Only one thread may publish
+    public void publish(Simulation sim) {
+        back.capture(sim, last);
+        back.fresh = true;
+        last = back;
+        back = middle.getAndSet(back);
+    }
+
+    // Returns the newest frame published, which stays the same until the
+    // next call (null until the first frame is published). Only one thread
+    // may read
+    public Frame latest() {
+        if (middle.get().fresh) {
+            front = middle.getAndSet(front);
+            front.fresh = false;
+        }
+        return front.tick < 0 ? null : front;
+    }
+
+    // Tests the methods in the FrameBuffer class by publishing frames of an
+    // environment read from standard input on one thread while reading them
+    // on another
+    public static void main(String[] args) throws InterruptedException {
+        Simulation sim = Simulation.read(new In());
+        FrameBuffer frames = new FrameBuffer();
+        StdOut.println("frame before any is published: " + frames.latest()
+                               + " (expected null)");
+
+        int numTicks = 200000;
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < numTicks; i++) {
+                sim.tick();
+                frames.publish(sim);
+            }
+        });
+        writer.start();
+
+        long reads = 0;
+        long lastTick = -1;
+        boolean ordered = true;
+        boolean whole = true;
+        while (writer.isAlive() || lastTick < numTicks) {
+            Frame f = frames.latest();
+            if (f == null)
+                continue;
+            ordered &= f.getTick() >= lastTick;
+            lastTick = f.getTick();
+            whole &= f.size == f.posX.length && f.ucColor != null;
+            reads++;
+        }
+        writer.join();
+
+        StdOut.println("frames read: " + reads + ", last tick: " + lastTick
+                               + " (expected " + numTicks + ")");
+        StdOut.println("ticks never went back: " + ordered + " (expected true)");
+        StdOut.println("frames whole: " + whole + " (expected true)");
+    }
+}
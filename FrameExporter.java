@@ -0,0 +1,249 @@
+/* FrameExporter.java
+ *
+ *  This class saves frames of a simulation to a directory of images, one
+ *  file per frame named after its tick, as PNG or as raw RGB (three bytes a
+ *  pixel, row by row from the top, MapView.CANVAS_SIZE pixels on a side).
+ *  The simulation thread only copies each frame into a spare image and
+ *  hands it to a small pool of encoder threads, which encode and write it
+ *  and give the image back. There are a fixed number of spare images, so at
+ *  most that many frames wait in memory. If the encoders fall that far
+ *  behind, the simulation waits for one to finish, and the time it waited
+ *  is counted so a run can tell when it needs more threads.
+ *
+ *  Compilation: javac-algs4 FrameExporter.java
+ *  Run: java-algs4 FrameExporter 5000 10 out png < ./Environment-Files/Environment1.txt
+ *  (saves every 10th of 5000 ticks to the out directory; rgb saves raw
+ *  frames, and a number of encoder threads can be given last)
+ */
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FrameExporter implements AutoCloseable {
+
+    // Spare images per encoder thread, so each one has a frame waiting
+    // while it writes another
+    private static final int IMAGES_PER_THREAD = 2;
+
+    // Stores the directory the frames are saved to
+    private final File dir;
+
+    // Stores whether frames are saved as PNG (or as raw RGB)
+    private final boolean png;
+
+    // Stores the threads that encode and write the frames
+    private final ExecutorService encoders;
+
+    // Stores the spare images not holding a frame waiting to be written
+    private final ArrayBlockingQueue<BufferedImage> spare;
+
+    // Stores the first error an encoder ran into (null if none did)
+    private volatile IOException failure;
+
+    // Stores the number of frames handed to the encoders and written
+    private long exported;
+    private final AtomicLong written = new AtomicLong();
+
+    // Stores the number of times and nanoseconds the simulation waited for
+    // a spare image
+    private long stalls;
+    private long stallNanos;
+
+    // Constructor that saves frames of the given width and height to the given
+    // directory (made if it is missing) in the given format ("png" or "rgb"),
+    // encoded on the given number of threads
+    public FrameExporter(String dir, String format, int width, int height, int threads)
+            throws IOException {
+        if (!format.equals("png") && !format.equals("rgb"))
+            throw new IllegalArgumentException("format must be png or rgb");
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1");
+        this.dir = new File(dir);
+        if (!this.dir.isDirectory() && !this.dir.mkdirs())
+            throw new IOException("cannot make directory " + dir);
+        png = format.equals("png");
+
+        spare = new ArrayBlockingQueue<BufferedImage>(IMAGES_PER_THREAD * threads);
+        for (int i = 0; i < IMAGES_PER_THREAD * threads; i++)
+            spare.add(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+
+        AtomicInteger numbered = new AtomicInteger();
+        encoders = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "encoder-" + numbered.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Copies the given frame (an image of the width and height given to the
+    // constructor) and has it saved under the given tick, waiting only if
+    // every spare image is still being written
+    public void export(long tick, BufferedImage frame) throws IOException {
+        if (failure != null)
+            throw failure;
+
+        BufferedImage copy = spare.poll();
+        if (copy == null) {
+            long start = System.nanoTime();
+            try {
+                copy = spare.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted waiting for an encoder", e);
+            }
+            stalls++;
+            stallNanos += System.nanoTime() - start;
+        }
+
+        int[] from = pixelsOf(frame);
+        int[] to = pixelsOf(copy);
+        if (from.length != to.length) {
+            spare.add(copy);
+            throw new IllegalArgumentException("frame is not the size exported");
+        }
+        System.arraycopy(from, 0, to, 0, to.length);
+
+        BufferedImage image = copy;
+        encoders.execute(() -> write(tick, image));
+        exported++;
+    }
+
+    // Writes the frame in the given image under the given tick and gives the
+    // image back (run by an encoder thread)
+    private void write(long tick, BufferedImage image) {
+        try {
+            String name = String.format("frame-%09d.%s", tick, png ? "png" : "rgb");
+            File file = new File(dir, name);
+            if (png) {
+                if (!ImageIO.write(image, "png", file))
+                    throw new IOException("no PNG encoder");
+            }
+            else {
+                writeRgb(image, file);
+            }
+            written.incrementAndGet();
+        }
+        catch (IOException e) {
+            if (failure == null)
+                failure = e;
+        }
+        finally {
+            spare.add(image);
+        }
+    }
+
+    // Writes the pixels of the given image to the given file as three bytes
+    // each, red, green and blue, row by row from the top
+    private static void writeRgb(BufferedImage image, File file) throws IOException {
+        int[] pixels = pixelsOf(image);
+        byte[] bytes = new byte[3 * pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            bytes[3 * i] = (byte) (pixels[i] >> 16);
+            bytes[3 * i + 1] = (byte) (pixels[i] >> 8);
+            bytes[3 * i + 2] = (byte) pixels[i];
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            out.write(bytes);
+        }
+    }
+
+    // Returns the pixels of the given image, row by row
+    private static int[] pixelsOf(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB)
+            throw new IllegalArgumentException("frames must be TYPE_INT_RGB images");
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    // Returns the number of frames handed to the encoders
+    public long exported() {
+        return exported;
+    }
+
+    // Returns the number of frames written so far
+    public long written() {
+        return written.get();
+    }
+
+    // Returns the number of times the simulation waited for an encoder
+    public long stalls() {
+        return stalls;
+    }
+
+    // Returns the seconds the simulation waited for an encoder in all
+    public double stallSeconds() {
+        return stallNanos / 1e9;
+    }
+
+    // Waits for every frame handed over to be written, then stops the
+    // encoders, throwing the first error one ran into
+    public void close() throws IOException {
+        encoders.shutdown();
+        try {
+            encoders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted waiting for the encoders", e);
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    // Runs an environment from standard input headlessly for the number of
+    // ticks given as the first argument, saving every nth tick (n given as
+    // the second argument) to the directory given as the third in the format
+    // given as the fourth (png if there is none), on the number of encoder
+    // threads given as the fifth (half the cores if there is none)
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        long numTicks = Long.parseLong(args[0]);
+        int every = Integer.parseInt(args[1]);
+        String format = args.length > 3 ? args[3] : "png";
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        if (args.length > 4)
+            threads = Integer.parseInt(args[4]);
+
+        Simulation sim = Simulation.read(new In());
+        MapView view = new MapView(sim.getRoads(), sim.getGrid(),
+                                   Integer.getInteger("renderThreads", 0));
+
+        FrameExporter exporter = new FrameExporter(args[2], format, MapView.CANVAS_SIZE,
+                                                   MapView.CANVAS_SIZE, threads);
+
+        long start = System.nanoTime();
+        for (long i = 0; i < numTicks; i++) {
+            sim.tick();
+            if (sim.getTicks() % every == 0) {
+                view.draw(sim.getUserCar(), sim.getCars(), sim.getStoplights());
+                exporter.export(sim.getTicks(), view.getFrame());
+            }
+        }
+        double simSeconds = (System.nanoTime() - start) / 1e9;
+        view.close();
+        exporter.close();
+        double allSeconds = (System.nanoTime() - start) / 1e9;
+
+        StdOut.printf("%d frames written of %d exported (expected %d)%n",
+                      exporter.written(), exporter.exported(), numTicks / every);
+        StdOut.printf("simulation took %.2f s, waiting %.2f s for %d encoder(s) "
+                              + "%d times%n", simSeconds, exporter.stallSeconds(),
+                      threads, exporter.stalls());
+        StdOut.printf("all written after %.2f s%n", allSeconds);
+    }
+}
@@ -0,0 +1,146 @@
+/* KeyRing.java
+ *
+ *  This class is a ring buffer of key events passed from one thread that
+ *  adds them (the Swing event thread) to one thread that takes them (the
+ *  simulation), with no locks. Each event is a key and the wall clock in
+ *  nanoseconds it came in at, kept in primitive arrays so nothing is boxed
+ *  or allocated per key. The adding thread only moves the tail and the
+ *  taking thread only moves the head, and each publishes its move with an
+ *  ordered write after touching the slots. A key that comes in while the
+ *  ring is full is dropped and counted.
+ *
+ *  Compilation: javac-algs4 KeyRing.java
+ *  Run: java-algs4 KeyRing
+ */
+
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class KeyRing {
+
+    // Stores the keys and the times they came in, in slots taken modulo the
+    // capacity (a power of two)
+    private final char[] keys;
+    private final long[] nanos;
+
+    // Stores the capacity minus one, to take positions modulo the capacity
+    private final int mask;
+
+    // Stores the position of the next key to take (only moved by the taker)
+    private final AtomicLong head = new AtomicLong();
+
+    // Stores the position the next key goes in (only moved by the adder)
+    private final AtomicLong tail = new AtomicLong();
+
+    // Stores the number of keys dropped because the ring was full (only
+    // written by the adder)
+    private volatile long dropped;
+
+    // Constructor that makes room for at least the given number of keys
+    public KeyRing(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException("capacity must be in 1 to 2^30");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        keys = new char[size];
+        nanos = new long[size];
+        mask = size - 1;
+    }
+
+    // Adds a key that came in at the given time in nanoseconds, returning
+    // false if it was dropped because the ring is full. Only one thread may add
+    public boolean offer(char key, long when) {
+        long t = tail.get();
+        if (t - head.get() == keys.length) {
+            dropped++;
+            return false;
+        }
+        int slot = (int) t & mask;
+        keys[slot] = key;
+        nanos[slot] = when;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // Checks if there are no keys to take
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    // Takes the oldest key. Only one thread may take
+    public char poll() {
+        long h = head.get();
+        if (h == tail.get())
+            throw new NoSuchElementException("no keys to take");
+        char key = keys[(int) h & mask];
+        head.lazySet(h + 1);
+        return key;
+    }
+
+    // Takes every key there is room for in the given arrays, oldest first,
+    // with the times they came in, and returns how many were taken. Only
+    // one thread may take
+    public int drain(char[] toKeys, long[] toNanos) {
+        long h = head.get();
+        int n = (int) Math.min(tail.get() - h, Math.min(toKeys.length, toNanos.length));
+        for (int i = 0; i < n; i++) {
+            int slot = (int) (h + i) & mask;
+            toKeys[i] = keys[slot];
+            toNanos[i] = nanos[slot];
+        }
+        head.lazySet(h + n);
+        return n;
+    }
+
+    // Returns the number of keys the ring holds at most
+    public int capacity() {
+        return keys.length;
+    }
+
+    // Returns the number of keys dropped because the ring was full
+    public long dropped() {
+        return dropped;
+    }
+
+    // Tests the methods in the KeyRing class by adding a million keys on one
+    // thread and taking them on another
+    public static void main(String[] args) throws InterruptedException {
+        KeyRing ring = new KeyRing(100);
+        StdOut.println("capacity: " + ring.capacity() + " (expected 128)");
+
+        int numKeys = 1000000;
+        Thread adder = new Thread(() -> {
+            for (int i = 0; i < numKeys; i++) {
+                while (!ring.offer((char) i, i)) {
+                    Thread.onSpinWait();
+                }
+            }
+        });
+        adder.start();
+
+        char[] keys = new char[16];
+        long[] nanos = new long[16];
+        long taken = 0;
+        boolean inOrder = true;
+        while (taken < numKeys) {
+            int n = ring.drain(keys, nanos);
+            for (int i = 0; i < n; i++) {
+                inOrder &= keys[i] == (char) taken && nanos[i] == taken;
+                taken++;
+            }
+        }
+        adder.join();
+
+        StdOut.println("keys taken: " + taken + " (expected " + numKeys + ")");
+        StdOut.println("in order: " + inOrder + " (expected true)");
+        StdOut.println("empty: " + ring.isEmpty() + " (expected true)");
+
+        KeyRing small = new KeyRing(4);
+        for (int i = 0; i < 7; i++)
+            small.offer('a', i);
+        StdOut.println("dropped when full: " + small.dropped() + " (expected 3)");
+    }
+}
@@ -1,7 +1,9 @@
 /* Keyboard.java
  *
  *  Adapted from given keyboard class in COS126 Guitar Hero assignment,
- *  this class allows for user input to adjust the user car
+ *  this class allows for user input to adjust the user car. Typed keys are
+ *  passed from the Swing event thread to the simulation through a KeyRing,
+ *  so no key is boxed and neither thread takes a lock
  *
  *  Compile: javac-algs4 Keyboard.java
  *  Run: java-algs4 Keyboard
@@ -25,12 +27,15 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.geom.Rectangle2D;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.NoSuchElementException;
-import java.util.TreeSet;
 
 public class Keyboard {
 
+    // Most typed keys kept waiting for the client
+    public static final int MAX_PENDING = 256;
+
     // initial font size
     private static final int DEFAULT_FONT_SIZE = 18;
 
@@ -43,13 +48,14 @@ public class Keyboard {
 
     // for synchronization
     private final Object mouseLock = new Object();
-    private final Object keyLock = new Object();
 
-    // queue of typed keys (yet to be processed by client)
-    private LinkedList<Character> keysTyped = new LinkedList<Character>();
+    // queue of typed keys and when they were typed (yet to be processed by
+    // client), added to only on the event thread
+    private final KeyRing keysTyped = new KeyRing(MAX_PENDING);
 
-    // set of key characters currently pressed down
-    private TreeSet<Character> keysDown = new TreeSet<Character>();
+    // set of key characters currently pressed down (only used on the event
+    // thread)
+    private final BitSet keysDown = new BitSet();
 
     // Key that is being clicked (null if no such key)
     private Key mouseKey = null;
@@ -96,20 +102,23 @@ public class Keyboard {
 
     // Returns the last key that was pressed
     public char nextKeyPressed() {
-        synchronized (keyLock) {
-            if (keysTyped.isEmpty()) {
-                throw new NoSuchElementException(
-                        "your program has already processed all typed keys");
-            }
-            return keysTyped.removeLast();
+        if (keysTyped.isEmpty()) {
+            throw new NoSuchElementException(
+                    "your program has already processed all typed keys");
         }
+        return keysTyped.poll();
     }
 
     // Returns whether a key was pressed
     public boolean wasNextKeyPressed() {
-        synchronized (keyLock) {
-            return !keysTyped.isEmpty();
-        }
+        return !keysTyped.isEmpty();
+    }
+
+    // Takes every key typed since the last call, oldest first, into the given
+    // arrays along with the System.nanoTime it was typed at, and returns the
+    // number taken (arrays of MAX_PENDING keys always have room for them all)
+    public int drainKeys(char[] keys, long[] nanos) {
+        return keysTyped.drain(keys, nanos);
     }
 
     // Returns if the letter is in the alphabet taking a character as input
@@ -150,7 +159,7 @@ public class Keyboard {
             for (Key k : keys) {
 
                 // mouse click or key typed
-                if ((k == mouseKey) || keysDown.contains(k.getKeyStroke())) {
+                if ((k == mouseKey) || keysDown.get(k.getKeyStroke())) {
                     k.draw(g, width, height, Color.BLUE, Color.WHITE);
                 }
                 else {
@@ -185,7 +194,7 @@ public class Keyboard {
                     if (k.contains(mouseX, mouseY)) {
                         mouseKey = k;
                         char c = k.getKeyStroke();
-                        keysTyped.addFirst(c);
+                        keysTyped.offer(c, System.nanoTime());
                         repaint();
                         return;
                     }
@@ -206,26 +215,20 @@ public class Keyboard {
          ***************************************************************************/
 
         public void keyTyped(KeyEvent e) {
-            synchronized (keyLock) {
-                char c = Character.toLowerCase(e.getKeyChar());
-                keysTyped.addFirst(c);
-            }
+            char c = Character.toLowerCase(e.getKeyChar());
+            keysTyped.offer(c, System.nanoTime());
         }
 
         public void keyPressed(KeyEvent e) {
-            synchronized (keyLock) {
-                char c = Character.toLowerCase(e.getKeyChar());
-                keysDown.add(c);
-                repaint();
-            }
+            char c = Character.toLowerCase(e.getKeyChar());
+            keysDown.set(c);
+            repaint();
         }
 
         public void keyReleased(KeyEvent e) {
-            synchronized (keyLock) {
-                char c = Character.toLowerCase(e.getKeyChar());
-                keysDown.remove(c);
-                repaint();
-            }
+            char c = Character.toLowerCase(e.getKeyChar());
+            keysDown.clear(c);
+            repaint();
         }
     }
 
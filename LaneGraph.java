@@ -0,0 +1,215 @@
+/* LaneGraph.java
+ *
+ *  This class compiles the road grid once into lane segments: every row is
+ *  split into the runs of road cells a car driving across it can use, and
+ *  every column into the runs a car driving up or down it can use. A
+ *  segment ends where the road ends or crosses into grass, which is exactly
+ *  where a car has to decide whether to turn or stop. A car remembers the
+ *  segment it is on, so until the cell ahead of it leaves that segment it
+ *  only compares its position with the segment's ends instead of probing
+ *  the grid around it.
+ *
+ *  Compilation: javac-algs4 LaneGraph.java
+ *  Run: java-algs4 LaneGraph < ./Environment-Files/Environment1.txt
+ */
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.Arrays;
+
+public class LaneGraph {
+
+    // Stores the number of cells in each row and the number of rows
+    private final int width;
+    private final int height;
+
+    // Stores where each row's segments start (one extra entry at the end
+    // marks where the last row's stop)
+    private final int[] rowFirst;
+
+    // Stores where each column's segments start, counting from the first
+    // column segment (one extra entry at the end as for rows)
+    private final int[] columnFirst;
+
+    // Stores the number of row segments, which come before the column ones
+    private final int numRowSegments;
+
+    // Stores the row or column each segment is on
+    private final int[] lane;
+
+    // Stores the first and last cell of each segment along its lane
+    private final int[] lo;
+    private final int[] hi;
+
+    // Constructor that compiles the given road grid into segments
+    public LaneGraph(RoadGrid grid) {
+        width = grid.getWidth();
+        height = grid.getHeight();
+
+        // Row segments are found a word at a time
+        rowFirst = new int[height + 1];
+        int[] rowLo = new int[16];
+        int[] rowHi = new int[16];
+        int n = 0;
+        for (int py = 0; py < height; py++) {
+            rowFirst[py] = n;
+            int px = grid.next(py, 0, true);
+            while (px < width) {
+                int end = grid.next(py, px, false);
+                if (n == rowLo.length) {
+                    rowLo = Arrays.copyOf(rowLo, 2 * n);
+                    rowHi = Arrays.copyOf(rowHi, 2 * n);
+                }
+                rowLo[n] = px;
+                rowHi[n] = end - 1;
+                n++;
+                px = end < width ? grid.next(py, end, true) : width;
+            }
+        }
+        rowFirst[height] = n;
+        numRowSegments = n;
+
+        // A column segment starts at every road cell with no road below it,
+        // so they are counted and then filled in column by column
+        columnFirst = new int[width + 1];
+        for (int py = 0; py < height; py++) {
+            for (int s = rowFirst[py]; s < rowFirst[py + 1]; s++) {
+                for (int px = rowLo[s]; px <= rowHi[s]; px++) {
+                    if (py == 0 || !grid.getUnchecked(py - 1, px))
+                        columnFirst[px + 1]++;
+                }
+            }
+        }
+        for (int px = 0; px < width; px++)
+            columnFirst[px + 1] += columnFirst[px];
+        int numColumnSegments = columnFirst[width];
+
+        int total = numRowSegments + numColumnSegments;
+        lane = new int[total];
+        lo = new int[total];
+        hi = new int[total];
+        for (int py = 0; py < height; py++) {
+            for (int s = rowFirst[py]; s < rowFirst[py + 1]; s++) {
+                lane[s] = py;
+                lo[s] = rowLo[s];
+                hi[s] = rowHi[s];
+            }
+        }
+
+        int[] next = Arrays.copyOf(columnFirst, width);
+        for (int py = 0; py < height; py++) {
+            for (int s = rowFirst[py]; s < rowFirst[py + 1]; s++) {
+                for (int px = rowLo[s]; px <= rowHi[s]; px++) {
+                    if (py > 0 && grid.getUnchecked(py - 1, px))
+                        continue;
+                    int end = py;
+                    while (end + 1 < height && grid.getUnchecked(end + 1, px))
+                        end++;
+                    int c = numRowSegments + next[px]++;
+                    lane[c] = px;
+                    lo[c] = py;
+                    hi[c] = end;
+                }
+            }
+        }
+    }
+
+    // Returns the number of segments
+    public int numSegments() {
+        return lane.length;
+    }
+
+    // Returns the number of row segments (the rest are column segments)
+    public int numRowSegments() {
+        return numRowSegments;
+    }
+
+    // Returns the segment of row py that cell px is on (-1 if it is not road)
+    public int rowSegment(int py, int px) {
+        if (py < 0 || py >= height || px < 0 || px >= width)
+            return -1;
+        return find(rowFirst[py], rowFirst[py + 1], px);
+    }
+
+    // Returns the segment of column px that cell py is on (-1 if it is not road)
+    public int columnSegment(int px, int py) {
+        if (py < 0 || py >= height || px < 0 || px >= width)
+            return -1;
+        return find(numRowSegments + columnFirst[px],
+                    numRowSegments + columnFirst[px + 1], py);
+    }
+
+    // Returns the segment between from and to that has the given cell on it
+    // (-1 if none does)
+    private int find(int from, int to, int cell) {
+        int l = from;
+        int h = to - 1;
+        while (l <= h) {
+            int mid = (l + h) >>> 1;
+            if (hi[mid] < cell)
+                l = mid + 1;
+            else if (lo[mid] > cell)
+                h = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    // Checks if the given segment is a row segment
+    public boolean isRow(int s) {
+        return s < numRowSegments;
+    }
+
+    // Returns the row or column the given segment is on
+    public int lane(int s) {
+        return lane[s];
+    }
+
+    // Checks if the given cell along its lane is on the given segment
+    public boolean contains(int s, int cell) {
+        return lo[s] <= cell && cell <= hi[s];
+    }
+
+    // Returns the first cell of the given segment along its lane
+    public int first(int s) {
+        return lo[s];
+    }
+
+    // Returns the last cell of the given segment along its lane
+    public int last(int s) {
+        return hi[s];
+    }
+
+    // Tests the methods in the LaneGraph class by checking every cell of an
+    // environment read from standard input against the road grid
+    public static void main(String[] args) {
+        Simulation sim = Simulation.read(new In());
+        RoadGrid grid = sim.getGrid();
+        LaneGraph lanes = new LaneGraph(grid);
+
+        int mismatches = 0;
+        for (int py = -1; py <= grid.getHeight(); py++) {
+            for (int px = -1; px <= grid.getWidth(); px++) {
+                boolean road = grid.get(py, px);
+                int r = lanes.rowSegment(py, px);
+                int c = lanes.columnSegment(px, py);
+                if (road != (r >= 0) || road != (c >= 0))
+                    mismatches++;
+                else if (road && (lanes.lane(r) != py || lanes.lane(c) != px
+                        || !lanes.contains(r, px) || !lanes.contains(c, py)
+                        || grid.get(py, lanes.first(r) - 1)
+                        || grid.get(py, lanes.last(r) + 1)
+                        || grid.get(lanes.first(c) - 1, px)
+                        || grid.get(lanes.last(c) + 1, px)))
+                    mismatches++;
+            }
+        }
+
+        StdOut.println("row segments: " + lanes.numRowSegments());
+        StdOut.println("column segments: "
+                               + (lanes.numSegments() - lanes.numRowSegments()));
+        StdOut.println("mismatches: " + mismatches + " (expected 0)");
+    }
+}
@@ -0,0 +1,547 @@
+/* MapView.java
+ *
+ *  This class draws a simulation into an image instead of through standard
+ *  draw, looking at the map through a camera that can be moved and zoomed
+ *  (drag the window to pan and scroll to zoom). The roads in view are drawn
+ *  into a background image whenever the camera moves. Each frame only the
+ *  squares the cars covered last frame are copied back from the background
+ *  before the stoplights and cars in view are drawn again. Zoomed out far
+ *  enough that a car is smaller than a pixel, the cars are counted into
+ *  tiles of a few pixels and each tile is shaded by how many cars it holds,
+ *  so a frame costs about the same no matter how large the map or the fleet
+ *  is. Given a number of threads, the view paints straight into the pixels
+ *  of the image with a TileRaster instead of through Java2D, splitting the
+ *  frame into tiles painted in parallel, and the window shows the finished
+ *  image in one copy. The image can be shown in a window or kept offscreen.
+ *
+ *  Compilation: javac-algs4 MapView.java
+ *  Run: java-algs4 MapView 500 map.png < ./Environment-Files/Environment1.txt
+ *  or java-algs4 MapView 500 map.png 25 25 50 < ./Environment-Files/Environment1.txt
+ *  to save the 50 x 50 squares around (25, 25), with -DrenderThreads=4 to
+ *  paint the pixels on 4 threads
+ */
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import javax.imageio.ImageIO;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.WindowConstants;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class MapView implements AutoCloseable {
+
+    // Width and height of the image in pixels (the standard draw default)
+    public static final int CANVAS_SIZE = 512;
+
+    // Half the side of a stoplight
+    private static final double LIGHT_RAD = .5;
+
+    // Fewest pixels per map unit the cars are drawn one by one at
+    private static final double MIN_CAR_SCALE = 1;
+
+    // Side of a density tile in pixels and the number of tiles across
+    private static final int TILE_PIXELS = 4;
+    private static final int TILES = CANVAS_SIZE / TILE_PIXELS;
+
+    // Fewest map units across the camera can zoom in to
+    private static final double MIN_SPAN = 8;
+
+    // How much one step of the mouse wheel zooms by
+    private static final double ZOOM_STEP = 1.25;
+
+    // Shades of the density tiles, from one car to 2^11 or more
+    private static final Color[] DENSITY = new Color[12];
+
+    static {
+        for (int i = 0; i < DENSITY.length; i++) {
+            double t = (double) i / (DENSITY.length - 1);
+            DENSITY[i] = new Color(255 - (int) (95 * t), (int) (230 * (1 - t)),
+                                   (int) (120 * (1 - t)));
+        }
+    }
+
+    // Is where the camera looks: the map square with its lower left corner
+    // at (left, bottom) and span map units on a side
+    private static final class Camera {
+        private final double left;
+        private final double bottom;
+        private final double span;
+
+        private Camera(double left, double bottom, double span) {
+            this.left = left;
+            this.bottom = bottom;
+            this.span = span;
+        }
+    }
+
+    // Stores the roads as { xCenter, yCenter, halfWidth, halfHeight }
+    private final int[][] roads;
+
+    // Stores the number of map units across the whole map
+    private final int size;
+
+    // Stores where the camera is told to look (set from any thread)
+    private volatile Camera camera;
+
+    // Stores the camera the background was last drawn for
+    private Camera drawn;
+
+    // Stores the left and top edges of the view in map units and the number
+    // of pixels per map unit, for the camera the background was drawn for
+    private double left;
+    private double top;
+    private double scale;
+
+    // Stores whether the cars were last drawn as density tiles
+    private boolean dense;
+
+    // Stores how many cars fall in each density tile, row by row
+    private final int[] tileCounts = new int[TILES * TILES];
+
+    // Stores the roads in view
+    private final BufferedImage background;
+
+    // Stores the frame being drawn and shown
+    private final BufferedImage frame;
+
+    // Stores the graphics used to draw on the frame
+    private final Graphics2D g;
+
+    // Stores what paints straight into the pixels of the frame, or null to
+    // draw through the graphics instead
+    private final TileRaster raster;
+
+    // Stores the pixels of the background, row by row (null without a raster)
+    private final int[] backgroundPixels;
+
+    // Stores the color being drawn in, as RGB
+    private int rgb;
+
+    // Stores the pixel rectangles the cars covered last frame as
+    // x, y, width, height
+    private int[] dirty = new int[64];
+
+    // Stores the number of ints used in dirty
+    private int numDirty;
+
+    // Stores the last rectangle projected, as x, y, width, height in pixels
+    private final int[] lastFill = new int[4];
+
+    // Stores the panel the frame is shown on (null when offscreen)
+    private JPanel panel;
+
+    // Constructor that looks at the whole map of the given roads and grid
+    // Takes the 2D roads array and its road grid as arguments
+    public MapView(int[][] roads, RoadGrid grid) {
+        this(roads, grid, 0);
+    }
+
+    // Constructor that looks at the whole map of the given roads and grid,
+    // painting straight into the pixels on the given number of threads (0 to
+    // draw through Java2D instead)
+    public MapView(int[][] roads, RoadGrid grid, int threads) {
+        this.roads = roads;
+        size = Math.max(grid.getWidth(), grid.getHeight());
+        camera = new Camera(0, 0, size);
+
+        background = new BufferedImage(CANVAS_SIZE, CANVAS_SIZE,
+                                       BufferedImage.TYPE_INT_RGB);
+        frame = new BufferedImage(CANVAS_SIZE, CANVAS_SIZE, BufferedImage.TYPE_INT_RGB);
+        g = frame.createGraphics();
+        if (threads > 0) {
+            backgroundPixels = pixelsOf(background);
+            raster = new TileRaster(pixelsOf(frame), backgroundPixels,
+                                    CANVAS_SIZE, CANVAS_SIZE, threads);
+        }
+        else {
+            backgroundPixels = null;
+            raster = null;
+        }
+        look();
+    }
+
+    // Points the camera at the square of the given side in map units around
+    // the given x and y positions
+    public void setViewport(double centerX, double centerY, double span) {
+        span = Math.max(span, MIN_SPAN);
+        camera = new Camera(centerX - span / 2, centerY - span / 2, span);
+    }
+
+    // Moves the camera by the given map units
+    public void pan(double dx, double dy) {
+        Camera c = camera;
+        camera = new Camera(c.left + dx, c.bottom + dy, c.span);
+    }
+
+    // Zooms out by the given factor (in if it is less than one), keeping the
+    // given x and y positions in the same place in the view
+    public void zoom(double factor, double atX, double atY) {
+        Camera c = camera;
+        factor = Math.max(factor, MIN_SPAN / c.span);
+        camera = new Camera(atX - (atX - c.left) * factor,
+                            atY - (atY - c.bottom) * factor, c.span * factor);
+    }
+
+    // Returns the x position on the map under the given pixel column
+    public double mapX(int px) {
+        Camera c = camera;
+        return c.left + (px + .5) * c.span / CANVAS_SIZE;
+    }
+
+    // Returns the y position on the map under the given pixel row
+    public double mapY(int py) {
+        Camera c = camera;
+        return c.bottom + c.span - (py + .5) * c.span / CANVAS_SIZE;
+    }
+
+    // Checks if the camera is zoomed out far enough to draw density tiles
+    public boolean isZoomedOut() {
+        return CANVAS_SIZE / camera.span < MIN_CAR_SCALE;
+    }
+
+    // Shows the frame in a window of its own, panned by dragging it and
+    // zoomed with the mouse wheel
+    public void open() {
+        SwingUtilities.invokeLater(() -> {
+            panel = new JPanel() {
+                private static final long serialVersionUID = 1L;
+
+                public void paintComponent(Graphics graphics) {
+                    super.paintComponent(graphics);
+                    synchronized (frame) {
+                        graphics.drawImage(frame, 0, 0, null);
+                    }
+                }
+            };
+            panel.setPreferredSize(new Dimension(CANVAS_SIZE, CANVAS_SIZE));
+
+            MouseAdapter mouse = new MouseAdapter() {
+                private int lastX, lastY;
+
+                public void mousePressed(MouseEvent e) {
+                    lastX = e.getX();
+                    lastY = e.getY();
+                }
+
+                public void mouseDragged(MouseEvent e) {
+                    double perPixel = camera.span / CANVAS_SIZE;
+                    pan((lastX - e.getX()) * perPixel, (e.getY() - lastY) * perPixel);
+                    lastX = e.getX();
+                    lastY = e.getY();
+                }
+
+                public void mouseWheelMoved(MouseWheelEvent e) {
+                    zoom(Math.pow(ZOOM_STEP, e.getPreciseWheelRotation()),
+                         mapX(e.getX()), mapY(e.getY()));
+                }
+            };
+            panel.addMouseListener(mouse);
+            panel.addMouseMotionListener(mouse);
+            panel.addMouseWheelListener(mouse);
+
+            JFrame window = new JFrame("Driving Simulator");
+            window.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+            window.setResizable(false);
+            window.add(panel);
+            window.pack();
+            window.setVisible(true);
+        });
+    }
+
+    // Draws the stoplights and cars over the roads, first covering up where
+    // the cars were last frame
+    public void draw(UserCar uc, Fleet cars, Stoplight[] stoplights) {
+        synchronized (frame) {
+            begin();
+
+            for (int i = 0; i < stoplights.length; i++) {
+                setColor(stoplights[i].getColor());
+                drawLight(stoplights[i].getHorizPosition(),
+                          stoplights[i].getVertPosition());
+            }
+
+            if (dense) {
+                for (int i = 0; i < cars.size(); i++)
+                    countCar(cars.posX[i], cars.posY[i]);
+                drawTiles();
+                drawCar(uc.getColor(), uc.getXPosition(), uc.getYPosition());
+            }
+            else {
+                drawCar(uc.getColor(), uc.getXPosition(), uc.getYPosition());
+                for (int i = 0; i < cars.size(); i++)
+                    drawCar(cars.color(i), cars.posX[i], cars.posY[i]);
+            }
+            finish();
+        }
+    }
+
+    // Draws a frame handed over from the simulation, with every car the given
+    // fraction of the way from where it was the tick before to where it is
+    // (0 for the tick before, 1 for now)
+    public void draw(FrameBuffer.Frame f, double alpha) {
+        synchronized (frame) {
+            begin();
+
+            for (int i = 0; i < f.lightColor.length; i++) {
+                setColor(f.lightColor[i]);
+                drawLight(f.lightX[i], f.lightY[i]);
+            }
+
+            // The user car goes under the others zoomed in, as always, but
+            // over the density tiles zoomed out so it can still be found
+            if (!dense) {
+                drawCar(f.ucColor, f.ucPrevX + alpha * (f.ucX - f.ucPrevX),
+                        f.ucPrevY + alpha * (f.ucY - f.ucPrevY));
+            }
+            for (int i = 0; i < f.size; i++) {
+                double x = f.prevX[i] + alpha * (f.posX[i] - f.prevX[i]);
+                double y = f.prevY[i] + alpha * (f.posY[i] - f.prevY[i]);
+                if (dense)
+                    countCar(x, y);
+                else
+                    drawCar(f.palette[f.colorIndex[i]], x, y);
+            }
+            if (dense) {
+                drawTiles();
+                drawCar(f.ucColor, f.ucPrevX + alpha * (f.ucX - f.ucPrevX),
+                        f.ucPrevY + alpha * (f.ucY - f.ucPrevY));
+            }
+            finish();
+        }
+    }
+
+    // Starts a frame: redraws the background if the camera moved and covers
+    // up the cars of the last frame (the raster puts the background back
+    // under the tiles that need it itself)
+    private void begin() {
+        if (camera != drawn)
+            look();
+        else if (raster == null && dense)
+            g.drawImage(background, 0, 0, null);
+        else if (raster == null)
+            clearCars();
+        numDirty = 0;
+        dense = scale < MIN_CAR_SCALE;
+    }
+
+    // Draws the roads the camera sees into the background and the frame
+    private void look() {
+        Camera c = camera;
+        drawn = c;
+        left = c.left;
+        top = c.bottom + c.span;
+        scale = CANVAS_SIZE / c.span;
+
+        if (raster != null) {
+            Arrays.fill(backgroundPixels, Car.GRASS_COLOR.getRGB());
+            for (int i = 0; i < roads.length; i++) {
+                if (inView(roads[i][0], roads[i][1], roads[i][2], roads[i][3])) {
+                    int[] r = project(roads[i][0], roads[i][1], roads[i][2], roads[i][3]);
+                    TileRaster.fill(backgroundPixels, CANVAS_SIZE, r[0], r[1], r[2], r[3],
+                                    Car.ROAD_COLOR.getRGB());
+                }
+            }
+            raster.invalidate();
+            return;
+        }
+
+        Graphics2D bg = background.createGraphics();
+        bg.setColor(Car.GRASS_COLOR);
+        bg.fillRect(0, 0, CANVAS_SIZE, CANVAS_SIZE);
+        bg.setColor(Car.ROAD_COLOR);
+        for (int i = 0; i < roads.length; i++) {
+            if (inView(roads[i][0], roads[i][1], roads[i][2], roads[i][3])) {
+                int[] r = project(roads[i][0], roads[i][1], roads[i][2], roads[i][3]);
+                bg.fillRect(r[0], r[1], r[2], r[3]);
+            }
+        }
+        bg.dispose();
+
+        g.drawImage(background, 0, 0, null);
+    }
+
+    // Ends a frame, painting it into the pixels if the raster draws it
+    private void finish() {
+        if (raster != null)
+            raster.paint();
+    }
+
+    // Sets the color drawn in
+    private void setColor(Color c) {
+        g.setColor(c);
+        rgb = c.getRGB();
+    }
+
+    // Fills the given pixel rectangle of the frame in the color drawn in
+    private void fillPixels(int x, int y, int w, int h) {
+        if (raster != null)
+            raster.add(x, y, w, h, rgb);
+        else
+            g.fillRect(x, y, w, h);
+    }
+
+    // Checks if any of the rectangle with the given center and half width and
+    // height in map units is in view
+    private boolean inView(double x, double y, double halfWidth, double halfHeight) {
+        double right = left + CANVAS_SIZE / scale;
+        double bottom = top - CANVAS_SIZE / scale;
+        return x + halfWidth >= left && x - halfWidth <= right
+                && y + halfHeight >= bottom && y - halfHeight <= top;
+    }
+
+    // Covers up the squares the cars were drawn on last frame with the roads
+    private void clearCars() {
+        for (int i = 0; i < numDirty; i += 4) {
+            int x = dirty[i];
+            int y = dirty[i + 1];
+            int w = dirty[i + 2];
+            int h = dirty[i + 3];
+            g.drawImage(background, x, y, x + w, y + h, x, y, x + w, y + h, null);
+        }
+        numDirty = 0;
+    }
+
+    // Stops the threads painting the pixels, if there are any. The view cannot
+    // draw after it is closed
+    public void close() {
+        if (raster != null)
+            raster.close();
+    }
+
+    // Shows the frame that was drawn last
+    public void show() {
+        if (panel != null)
+            panel.repaint();
+    }
+
+    // Returns the pixels of the given image, row by row
+    private static int[] pixelsOf(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    // Returns the image the frames are drawn in
+    public BufferedImage getFrame() {
+        return frame;
+    }
+
+    // Draws a stoplight in the current color if it is in view
+    private void drawLight(int x, int y) {
+        if (inView(x, y, LIGHT_RAD, LIGHT_RAD))
+            fill(x, y, LIGHT_RAD, LIGHT_RAD);
+    }
+
+    // Draws a car if it is in view and remembers the square it covered
+    private void drawCar(Color c, double x, double y) {
+        if (!inView(x, y, Fleet.RAD, Fleet.RAD))
+            return;
+        setColor(c);
+        int[] r = fill(x, y, Fleet.RAD, Fleet.RAD);
+
+        if (raster == null && r[2] > 0 && r[3] > 0) {
+            if (numDirty + 4 > dirty.length)
+                dirty = Arrays.copyOf(dirty, 2 * dirty.length);
+            dirty[numDirty++] = r[0];
+            dirty[numDirty++] = r[1];
+            dirty[numDirty++] = r[2];
+            dirty[numDirty++] = r[3];
+        }
+    }
+
+    // Counts a car in the density tile it is in, if it is in view
+    private void countCar(double x, double y) {
+        double px = (x - left) * scale;
+        double py = (top - y) * scale;
+        if (px < 0 || py < 0 || px >= CANVAS_SIZE || py >= CANVAS_SIZE)
+            return;
+        tileCounts[((int) py / TILE_PIXELS) * TILES + (int) px / TILE_PIXELS]++;
+    }
+
+    // Shades every density tile with cars in it by how many it has, and
+    // empties the counts for the next frame
+    private void drawTiles() {
+        for (int t = 0; t < tileCounts.length; t++) {
+            int count = tileCounts[t];
+            if (count == 0)
+                continue;
+            int level = Math.min(31 - Integer.numberOfLeadingZeros(count),
+                                 DENSITY.length - 1);
+            setColor(DENSITY[level]);
+            fillPixels((t % TILES) * TILE_PIXELS, (t / TILES) * TILE_PIXELS,
+                       TILE_PIXELS, TILE_PIXELS);
+            tileCounts[t] = 0;
+        }
+    }
+
+    // Fills the rectangle with the given center and half width and height in
+    // map units in the color drawn in, and returns the pixels it covered
+    private int[] fill(double x, double y, double halfWidth, double halfHeight) {
+        int[] r = project(x, y, halfWidth, halfHeight);
+        if (r[2] > 0 && r[3] > 0)
+            fillPixels(r[0], r[1], r[2], r[3]);
+        return r;
+    }
+
+    // Returns the pixels the rectangle with the given center and half width
+    // and height in map units covers, clipped to the image, as x, y, width,
+    // height
+    private int[] project(double x, double y, double halfWidth, double halfHeight) {
+        int x0 = Math.max((int) Math.floor((x - halfWidth - left) * scale), 0);
+        int x1 = Math.min((int) Math.ceil((x + halfWidth - left) * scale), CANVAS_SIZE);
+        int y0 = Math.max((int) Math.floor((top - y - halfHeight) * scale), 0);
+        int y1 = Math.min((int) Math.ceil((top - y + halfHeight) * scale), CANVAS_SIZE);
+
+        // Anything on the map is at least one pixel
+        if (x1 == x0 && x0 < CANVAS_SIZE)
+            x1++;
+        if (y1 == y0 && y0 < CANVAS_SIZE)
+            y1++;
+
+        lastFill[0] = x0;
+        lastFill[1] = y0;
+        lastFill[2] = Math.max(x1 - x0, 0);
+        lastFill[3] = Math.max(y1 - y0, 0);
+        return lastFill;
+    }
+
+    // Runs an environment from standard input for the number of ticks given
+    // as the first argument and saves the last frame to the file given as the
+    // second argument, optionally looking at the square around the x and y
+    // positions given as the third and fourth arguments with the side given
+    // as the fifth
+    public static void main(String[] args) throws IOException {
+        long numTicks = Long.parseLong(args[0]);
+        Simulation sim = Simulation.read(new In());
+        MapView view = new MapView(sim.getRoads(), sim.getGrid(),
+                                   Integer.getInteger("renderThreads", 0));
+        if (args.length > 4) {
+            view.setViewport(Double.parseDouble(args[2]), Double.parseDouble(args[3]),
+                             Double.parseDouble(args[4]));
+        }
+
+        long start = System.nanoTime();
+        for (long i = 0; i < numTicks; i++) {
+            view.draw(sim.getUserCar(), sim.getCars(), sim.getStoplights());
+            sim.tick();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        view.close();
+        ImageIO.write(view.getFrame(), "png", new File(args[1]));
+        StdOut.printf("%.3f ms per tick drawn%s%n", 1e3 * seconds / Math.max(numTicks, 1),
+                      view.isZoomedOut() ? " as density tiles" : "");
+    }
+}
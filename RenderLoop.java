@@ -0,0 +1,104 @@
+/* RenderLoop.java
+ *
+ *  This class is the thread that draws the simulation, apart from the
+ *  thread that runs it. At the display rate it takes the newest frame the
+ *  simulation published, draws every car part of the way between where it
+ *  was the tick before and where it is (by how much of a tick has passed
+ *  since the frame came in) and shows it. It never holds a lock the
+ *  simulation waits on, so a slow draw only drops frames and never slows
+ *  the ticks down, and the cars move smoothly even when the display is
+ *  faster than the ticks.
+ *
+ *  Compilation: javac-algs4 RenderLoop.java
+ *  Run: java-algs4 RenderLoop 10 map.png < ./Environment-Files/Environment1.txt
+ *  (runs for 10 seconds and saves the last frame drawn)
+ */
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+public class RenderLoop extends Thread {
+
+    // Frames drawn each second unless told otherwise
+    public static final int FRAMES_PER_SECOND = 60;
+
+    // Stores the view the frames are drawn in
+    private final MapView view;
+
+    // Stores the frames the simulation publishes
+    private final FrameBuffer frames;
+
+    // Stores the nanoseconds between frames drawn
+    private final long periodNanos;
+
+    // Stores the number of frames drawn
+    private volatile long drawn;
+
+    // Constructor that draws the frames published to the given buffer in the
+    // given view the given number of times a second
+    public RenderLoop(MapView view, FrameBuffer frames, int framesPerSecond) {
+        super("render");
+        this.view = view;
+        this.frames = frames;
+        periodNanos = 1_000_000_000L / framesPerSecond;
+        setDaemon(true);
+    }
+
+    // Draws the newest frame at the display rate until interrupted
+    public void run() {
+        long next = System.nanoTime();
+        while (!isInterrupted()) {
+            FrameBuffer.Frame f = frames.latest();
+            if (f != null) {
+                view.draw(f, f.alpha(System.nanoTime()));
+                view.show();
+                drawn++;
+            }
+
+            // A frame that ran long is skipped rather than made up for
+            next += periodNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+            else
+                next = System.nanoTime();
+        }
+    }
+
+    // Returns the number of frames drawn
+    public long framesDrawn() {
+        return drawn;
+    }
+
+    // Runs an environment from standard input offscreen for the number of
+    // seconds given as the first argument, ticking on one thread and drawing
+    // on another, and saves the last frame to the file given as the second
+    public static void main(String[] args) throws IOException, InterruptedException {
+        double seconds = Double.parseDouble(args[0]);
+        Simulation sim = Simulation.read(new In());
+        MapView view = new MapView(sim.getRoads(), sim.getGrid());
+        FrameBuffer frames = new FrameBuffer();
+
+        RenderLoop render = new RenderLoop(view, frames, FRAMES_PER_SECOND);
+        render.start();
+        Thread ticker = new Thread(() -> sim.runAtRate(Simulation.TICKS_PER_SECOND,
+                                                       frames));
+        ticker.start();
+
+        Thread.sleep((long) (seconds * 1000));
+        ticker.interrupt();
+        ticker.join();
+        render.interrupt();
+        render.join();
+
+        ImageIO.write(view.getFrame(), "png", new File(args[1]));
+        StdOut.printf("%d ticks and %d frames in %.1f s (expected about %.0f and %.0f)%n",
+                      sim.getTicks(), render.framesDrawn(), seconds,
+                      seconds * Simulation.TICKS_PER_SECOND, seconds * FRAMES_PER_SECOND);
+    }
+}
@@ -0,0 +1,165 @@
+/* RoadGrid.java
+ *
+ *  This class stores which cells of the map are road as one bit per cell,
+ *  packed 64 to a long, so city sized maps fit in memory. The get method
+ *  checks its bounds (cells off the map are never road) and the unchecked
+ *  version skips the check for callers that already know the cell is on the
+ *  map. Roads are only ever added while the map is laid out; red lights
+ *  block cells in a SignalMask layer instead, so a grid can be shared by
+ *  many threads and anything worked out from it stays true.
+ *
+ *  Compilation: javac-algs4 RoadGrid.java
+ *  Run: java-algs4 RoadGrid 100000 100000
+ */
+
+import edu.princeton.cs.algs4.StdOut;
+
+public class RoadGrid {
+
+    // Smallest size a map is given, so small environments keep the old display
+    public static final int MIN_SIZE = 100;
+
+    // Stores the number of cells in each row
+    private final int width;
+
+    // Stores the number of rows
+    private final int height;
+
+    // Stores the cells row by row, one bit per cell
+    private final long[] words;
+
+    // Constructor that makes a width x height grid with no road on it
+    public RoadGrid(int width, int height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("grid size must be positive");
+
+        long numWords = ((long) width * height + 63) >>> 6;
+        if (numWords > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("grid is too large: " + width
+                                                       + " x " + height);
+
+        this.width = width;
+        this.height = height;
+        words = new long[(int) numWords];
+    }
+
+    // Makes a grid just large enough for the given roads (but at least
+    // MIN_SIZE x MIN_SIZE) and lays them out on it
+    public static RoadGrid of(int[][] roads) {
+        int width = MIN_SIZE;
+        int height = MIN_SIZE;
+        for (int i = 0; i < roads.length; i++) {
+            width = Math.max(width, roads[i][0] + roads[i][2] + 1);
+            height = Math.max(height, roads[i][1] + roads[i][3] + 1);
+        }
+
+        RoadGrid grid = new RoadGrid(width, height);
+        for (int i = 0; i < roads.length; i++) {
+            grid.fill(roads[i][0], roads[i][1], roads[i][2], roads[i][3]);
+        }
+        return grid;
+    }
+
+    // Returns the number of cells in each row
+    public int getWidth() {
+        return width;
+    }
+
+    // Returns the number of rows
+    public int getHeight() {
+        return height;
+    }
+
+    // Checks if the cell at the given x and y positions is on the map
+    public boolean contains(int py, int px) {
+        return py >= 0 && py < height && px >= 0 && px < width;
+    }
+
+    // Checks if the cell at the given x and y positions is road
+    // (cells off the map are not)
+    public boolean get(int py, int px) {
+        return contains(py, px) && getUnchecked(py, px);
+    }
+
+    // Checks if the cell at the given x and y positions is road, which must
+    // be on the map
+    public boolean getUnchecked(int py, int px) {
+        long bit = (long) py * width + px;
+        return (words[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    // Returns the first cell at or after px in row py that is road (or that
+    // is not road if isRoad is false), or the width if there is none
+    public int next(int py, int px, boolean isRoad) {
+        long rowStart = (long) py * width;
+        long bit = rowStart + px;
+        long end = rowStart + width;
+
+        while (bit < end) {
+            long w = words[(int) (bit >>> 6)];
+            if (!isRoad)
+                w = ~w;
+            w &= -1L << bit;
+            if (w != 0) {
+                long found = (bit & ~63L) + Long.numberOfTrailingZeros(w);
+                return (int) (Math.min(found, end) - rowStart);
+            }
+            bit = (bit | 63) + 1;
+        }
+        return width;
+    }
+
+    // Sets the area of a road to true, clipped to the map
+    // Takes xCenter, yCenter, half width and half height as arguments
+    public void fill(int xCenter, int yCenter, int halfWidth, int halfHeight) {
+        int x0 = Math.max(xCenter - halfWidth, 0);
+        int x1 = Math.min(xCenter + halfWidth, width - 1);
+        int y0 = Math.max(yCenter - halfHeight, 0);
+        int y1 = Math.min(yCenter + halfHeight, height - 1);
+        if (x0 > x1)
+            return;
+
+        for (int i = y0; i <= y1; i++) {
+            long from = (long) i * width + x0;
+            long to = (long) i * width + x1;
+            int first = (int) (from >>> 6);
+            int last = (int) (to >>> 6);
+            long firstMask = -1L << from;
+            long lastMask = -1L >>> (63 - (to & 63));
+
+            if (first == last) {
+                words[first] |= firstMask & lastMask;
+            }
+            else {
+                words[first] |= firstMask;
+                for (int w = first + 1; w < last; w++)
+                    words[w] = -1L;
+                words[last] |= lastMask;
+            }
+        }
+    }
+
+    // Returns the number of bytes the cells take up
+    public long bytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    // Tests the methods in the RoadGrid class and prints how much memory a
+    // grid of the size given as arguments takes up
+    public static void main(String[] args) {
+        int[][] roads = { { 25, 25, 1, 25 }, { 50, 49, 25, 1 }, { 75, 58, 1, 10 } };
+        RoadGrid grid = RoadGrid.of(roads);
+
+        StdOut.println("(25, 2) road: " + grid.get(2, 25) + " (expected true)");
+        StdOut.println("(27, 2) road: " + grid.get(2, 27) + " (expected false)");
+        StdOut.println("(75, 68) road: " + grid.get(68, 75) + " (expected true)");
+        StdOut.println("(-1, 0) road: " + grid.get(0, -1) + " (expected false)");
+
+        if (args.length == 2) {
+            int width = Integer.parseInt(args[0]);
+            int height = Integer.parseInt(args[1]);
+            StdOut.printf("%d x %d grid: %.2f GB%n", width, height,
+                          ((((long) width * height + 63) >>> 6) * 8) / 1e9);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/* ScenarioFile.java
+ *
+ *  This class writes and loads environments in a compact binary format so
+ *  generated scenarios with millions of cars load without reading a token
+ *  at a time. The file is memory mapped and each section is copied straight
+ *  into the fleet's arrays. A file holds the whole state of the world at
+ *  the tick it was written on, so it is also a snapshot a long run can be
+ *  checkpointed to and picked up from without its warm-up. All numbers are
+ *  little-endian and every section starts on a multiple of its element size:
+ *
+ *    header      int magic, version, numAC, numRoads, numSL, numColors, 0, 0
+ *                long ticks; double time
+ *    user car    double x, y, vx, vy, speed; int rgb, direction
+ *    cars        double x[numAC], y[numAC], vx[numAC], vy[numAC], speed[numAC]
+ *    palette     int rgb[numColors]
+ *    car colors  char paletteIndex[numAC], padded to a multiple of 8 bytes
+ *    directions  byte direction[numAC], padded to a multiple of 8 bytes
+ *    stoplights  double timeRed, timeGreen for each light
+ *                int x, y for each light
+ *                int phase for each light (-1 before the clock first moves)
+ *    roads       int xCenter, yCenter, halfWidth, halfHeight for each road
+ *
+ *  Version 1 files, which only hold the starting environment, have no ticks,
+ *  time, speeds, directions or phases and are still loaded.
+ *
+ *  Compilation: javac-algs4 ScenarioFile.java
+ *  Run: java-algs4 ScenarioFile ./Environment-Files/Environment1.txt env1.sim
+ *  or java-algs4 ScenarioFile ./Environment-Files/Environment1.txt env1.sim 5000
+ *  to also snapshot the run after 5000 ticks and check it picks up the same
+ */
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class ScenarioFile {
+
+    // Marks the start of a scenario file ("DSIM")
+    public static final int MAGIC = 0x4453494D;
+
+    // Version of the format written
+    public static final int VERSION = 2;
+
+    // Bytes before the autonomous cars start in version 1 and 2 files
+    private static final int HEADER_BYTES_V1 = 72;
+    private static final int HEADER_BYTES = 96;
+
+    // Bytes written to the file at a time
+    private static final int CHUNK = 1 << 20;
+
+    // Writes the state of a simulation at its current tick to the given file
+    public static void write(Simulation sim, String filename) throws IOException {
+        Fleet cars = sim.getCars();
+        UserCar uc = sim.getUserCar();
+        Stoplight[] stoplights = sim.getStoplights();
+        int[][] roads = sim.getRoads();
+        int numAC = cars.size();
+
+        try (FileChannel out = FileChannel.open(Paths.get(filename),
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.TRUNCATE_EXISTING,
+                                                StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+
+            buf.putInt(MAGIC).putInt(VERSION).putInt(numAC).putInt(roads.length)
+               .putInt(stoplights.length).putInt(cars.paletteSize())
+               .putInt(0).putInt(0);
+            buf.putLong(sim.getTicks()).putDouble(sim.getTime());
+            buf.putDouble(uc.getXPosition()).putDouble(uc.getYPosition())
+               .putDouble(uc.getXVelo()).putDouble(uc.getYVelo())
+               .putDouble(uc.getSpeed())
+               .putInt(uc.getColor().getRGB()).putInt(uc.getDirection());
+
+            double[][] columns = { cars.posX, cars.posY, cars.vx, cars.vy, cars.speed };
+            for (double[] column : columns) {
+                for (int i = 0; i < numAC; i++)
+                    buf = room(out, buf, Double.BYTES).putDouble(column[i]);
+            }
+
+            for (int c = 0; c < cars.paletteSize(); c++) {
+                buf = room(out, buf, Integer.BYTES);
+                buf.putInt(cars.paletteColor(c).getRGB());
+            }
+            for (int i = 0; i < numAC; i++) {
+                buf = room(out, buf, Character.BYTES);
+                buf.putChar((char) cars.paletteIndexOf(i));
+            }
+            for (int i = numAC * Character.BYTES; i % 8 != 0; i++)
+                buf = room(out, buf, 1).put((byte) 0);
+            for (int i = 0; i < numAC; i++)
+                buf = room(out, buf, 1).put(cars.direction[i]);
+            for (int i = numAC; i % 8 != 0; i++)
+                buf = room(out, buf, 1).put((byte) 0);
+
+            for (Stoplight sl : stoplights) {
+                buf = room(out, buf, 2 * Double.BYTES);
+                buf.putDouble(sl.getTimeRed()).putDouble(sl.getTimeGreen());
+            }
+            for (Stoplight sl : stoplights) {
+                buf = room(out, buf, 2 * Integer.BYTES);
+                buf.putInt(sl.getHorizPosition()).putInt(sl.getVertPosition());
+            }
+            for (Stoplight sl : stoplights)
+                buf = room(out, buf, Integer.BYTES).putInt(sl.getPhase());
+
+            for (int[] road : roads) {
+                for (int j = 0; j < 4; j++)
+                    buf = room(out, buf, Integer.BYTES).putInt(road[j]);
+            }
+
+            flush(out, buf);
+        }
+    }
+
+    // Writes the buffer out if it does not have the given number of bytes left
+    private static ByteBuffer room(FileChannel out, ByteBuffer buf, int bytes)
+            throws IOException {
+        if (buf.remaining() < bytes)
+            flush(out, buf);
+        return buf;
+    }
+
+    // Writes everything in the buffer out and empties it
+    private static void flush(FileChannel out, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining())
+            out.write(buf);
+        buf.clear();
+    }
+
+    // Loads a simulation from the given scenario file, picking it up at the
+    // tick the file was written on
+    public static Simulation load(String filename) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(filename),
+                                               StandardOpenOption.READ)) {
+            ByteBuffer header = map(in, 0, HEADER_BYTES_V1);
+            if (header.getInt() != MAGIC)
+                throw new IOException(filename + " is not a scenario file");
+            int version = header.getInt();
+            if (version != 1 && version != VERSION)
+                throw new IOException(filename + " has unknown version " + version);
+            boolean full = version == VERSION;
+
+            int numAC = header.getInt();
+            int numRoads = header.getInt();
+            int numSL = header.getInt();
+            int numColors = header.getInt();
+            if (full)
+                header = map(in, 0, HEADER_BYTES);
+            header.position(32);
+
+            long ticks = 0;
+            double time = 0;
+            if (full) {
+                ticks = header.getLong();
+                time = header.getDouble();
+            }
+            double ucX = header.getDouble();
+            double ucY = header.getDouble();
+            double ucVX = header.getDouble();
+            double ucVY = header.getDouble();
+            double ucSpeed = full ? header.getDouble() : 0;
+            UserCar uc = new UserCar(ucX, ucY, ucVX, ucVY, new Color(header.getInt()));
+            if (full) {
+                uc.setSpeed(ucSpeed);
+                uc.setDirection((char) header.getInt());
+            }
+
+            long offset = full ? HEADER_BYTES : HEADER_BYTES_V1;
+            long column = (long) numAC * Double.BYTES;
+            Fleet cars = new Fleet(numAC);
+            ByteBuffer x = map(in, offset, column);
+            ByteBuffer y = map(in, offset + column, column);
+            ByteBuffer vx = map(in, offset + 2 * column, column);
+            ByteBuffer vy = map(in, offset + 3 * column, column);
+            offset += 4 * column;
+            ByteBuffer speed = null;
+            if (full) {
+                speed = map(in, offset, column);
+                offset += column;
+            }
+
+            ByteBuffer paletteBuf = map(in, offset, (long) numColors * Integer.BYTES);
+            Color[] palette = new Color[numColors];
+            for (int c = 0; c < numColors; c++)
+                palette[c] = new Color(paletteBuf.getInt());
+            offset += (long) numColors * Integer.BYTES;
+
+            ByteBuffer colors = map(in, offset, (long) numAC * Character.BYTES);
+            offset += ((long) numAC * Character.BYTES + 7) / 8 * 8;
+
+            cars.addAll(numAC, x.asDoubleBuffer(), y.asDoubleBuffer(),
+                        vx.asDoubleBuffer(), vy.asDoubleBuffer(),
+                        colors.asCharBuffer(), palette);
+            if (full) {
+                speed.asDoubleBuffer().get(cars.speed, 0, numAC);
+                map(in, offset, numAC).get(cars.direction, 0, numAC);
+                offset += ((long) numAC + 7) / 8 * 8;
+            }
+
+            ByteBuffer times = map(in, offset, (long) numSL * 2 * Double.BYTES);
+            offset += (long) numSL * 2 * Double.BYTES;
+            ByteBuffer places = map(in, offset, (long) numSL * 2 * Integer.BYTES);
+            offset += (long) numSL * 2 * Integer.BYTES;
+            Stoplight[] stoplights = new Stoplight[numSL];
+            for (int i = 0; i < numSL; i++) {
+                stoplights[i] = new Stoplight(places.getInt(), places.getInt(),
+                                              times.getDouble(), times.getDouble());
+            }
+            if (full) {
+                ByteBuffer phases = map(in, offset, (long) numSL * Integer.BYTES);
+                offset += (long) numSL * Integer.BYTES;
+                for (Stoplight sl : stoplights) {
+                    int phase = phases.getInt();
+                    if (phase >= 0)
+                        sl.setPhase(phase);
+                }
+            }
+
+            ByteBuffer roadBuf = map(in, offset, (long) numRoads * 4 * Integer.BYTES);
+            IntBuffer roadInts = roadBuf.asIntBuffer();
+            int[][] roads = new int[numRoads][4];
+            for (int i = 0; i < numRoads; i++)
+                roadInts.get(roads[i]);
+
+            return new Simulation(roads, RoadGrid.of(roads), null, uc, cars,
+                                  stoplights, ticks, time);
+        }
+    }
+
+    // Maps a section of the file as a little-endian buffer
+    private static ByteBuffer map(FileChannel in, long offset, long bytes)
+            throws IOException {
+        if (bytes > Integer.MAX_VALUE)
+            throw new IOException("section of " + bytes + " bytes is too large");
+        MappedByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, offset, bytes);
+        return buf.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Checks if a file name is a binary scenario file
+    public static boolean isScenarioFile(String filename) {
+        return filename.endsWith(".sim");
+    }
+
+    // Converts the text environment given as the first argument to a scenario
+    // file named by the second argument and compares how long each takes to
+    // load. Given a number of ticks as well, it runs that many, snapshots the
+    // run to the file and in memory, and checks that both pick up the same
+    public static void main(String[] args) throws IOException {
+        long start = System.nanoTime();
+        Simulation sim = Simulation.read(new In(args[0]));
+        double textSeconds = (System.nanoTime() - start) / 1e9;
+
+        write(sim, args[1]);
+
+        start = System.nanoTime();
+        Simulation loaded = load(args[1]);
+        double binarySeconds = (System.nanoTime() - start) / 1e9;
+
+        boolean same = loaded.getCars().size() == sim.getCars().size();
+        for (int i = 0; same && i < sim.getCars().size(); i++) {
+            same = loaded.getCars().posX[i] == sim.getCars().posX[i]
+                    && loaded.getCars().posY[i] == sim.getCars().posY[i]
+                    && loaded.getCars().color(i).equals(sim.getCars().color(i));
+        }
+
+        StdOut.printf("text: %.3f s, binary: %.3f s, same cars: %b%n",
+                      textSeconds, binarySeconds, same);
+        if (args.length < 3)
+            return;
+
+        long numTicks = Long.parseLong(args[2]);
+        for (long t = 0; t < numTicks; t++)
+            sim.tick();
+        write(sim, args[1]);
+
+        start = System.nanoTime();
+        Simulation restored = load(args[1]);
+        double fileSeconds = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        Simulation forked = sim.snapshot();
+        double memorySeconds = (System.nanoTime() - start) / 1e9;
+
+        same = restored.checksum() == sim.checksum()
+                && forked.checksum() == sim.checksum();
+        for (long t = 0; t < numTicks; t++) {
+            sim.tick();
+            restored.tick();
+            forked.tick();
+        }
+        same &= restored.checksum() == sim.checksum()
+                && forked.checksum() == sim.checksum();
+
+        StdOut.printf("snapshot at tick %d restored from file in %.3f s, "
+                              + "in memory in %.3f s%n",
+                      numTicks, fileSeconds, memorySeconds);
+        StdOut.println("same " + numTicks + " ticks later: " + same
+                               + " (expected true)");
+    }
+}
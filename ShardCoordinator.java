@@ -0,0 +1,396 @@
+/* ShardCoordinator.java
+ *
+ *  This class runs a simulation split across processes on one machine, as
+ *  a stand-in for running it across several. The map is cut into a grid
+ *  of rectangular shards, and each shard is simulated by a ShardNode in a
+ *  JVM of its own that the coordinator starts and talks to over a local
+ *  socket. Every car starts in the shard that owns its cell and every
+ *  stoplight belongs to the shard that owns its cell. The user car is
+ *  driven by the first shard, since it reads nothing but the roads. The
+ *  shards tick in lockstep: each tick the coordinator sends every shard the
+ *  cars handed to it, in one batch per shard, and waits for all of them to
+ *  answer with the cars that crossed out of them and their counts of cars,
+ *  which it adds up. A .sim scenario is picked up by every shard at the
+ *  tick, time and stoplight phases it was saved at. With -Dcheck=true the
+ *  same environment is also run in this process, and the cars must end up
+ *  the same, as they must when the shards pick the run up from a snapshot
+ *  taken halfway through it.
+ *
+ *  Compilation: javac-algs4 ShardCoordinator.java
+ *  Run: java-algs4 ShardCoordinator ./Environment-Files/Environment1.txt 10000 2 2
+ *  (runs 10000 ticks on 2 x 2 shards)
+ */
+
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ShardCoordinator implements AutoCloseable {
+
+    // Milliseconds to wait for the shards to start and connect
+    private static final int CONNECT_MILLIS = 30000;
+
+    // Stores the number of shards across and down the map
+    private final int cols, rows;
+
+    // Stores the width and height of the map in cells
+    private final int width, height;
+
+    // Stores the processes running the shards
+    private final Process[] processes;
+
+    // Stores the connections to the shards
+    private final Socket[] sockets;
+    private final DataInputStream[] in;
+    private final DataOutputStream[] out;
+
+    // Stores the cars handed to each shard for the next tick
+    private Fleet[] arriving;
+
+    // Stores the ticks run so far
+    private long ticks;
+
+    // Stores the cars, moving cars and stopped cars after the last tick
+    private int numAC, moving, stopped;
+
+    // Stores the cars handed from one shard to another so far
+    private long handoffs;
+
+    // Stores the nanoseconds each shard spent ticking
+    private final long[] busyNanos;
+
+    // Constructor that starts a process for each of cols x rows shards of the
+    // given simulation's map and hands each its part of the world
+    public ShardCoordinator(Simulation sim, int cols, int rows) throws IOException {
+        this.cols = cols;
+        this.rows = rows;
+        width = sim.getGrid().getWidth();
+        height = sim.getGrid().getHeight();
+        int n = cols * rows;
+        processes = new Process[n];
+        sockets = new Socket[n];
+        in = new DataInputStream[n];
+        out = new DataOutputStream[n];
+        busyNanos = new long[n];
+
+        // Each shard is a JVM on the same class path that connects back here
+        InetAddress local = InetAddress.getLoopbackAddress();
+        try (ServerSocket server = new ServerSocket(0, n, local)) {
+            server.setSoTimeout(CONNECT_MILLIS);
+            String java = System.getProperty("java.home") + File.separator + "bin"
+                    + File.separator + "java";
+            for (int s = 0; s < n; s++) {
+                processes[s] = new ProcessBuilder(java, "-cp",
+                                                  System.getProperty("java.class.path"),
+                                                  "ShardNode", "" + server.getLocalPort(),
+                                                  "" + s).inheritIO().start();
+            }
+            for (int k = 0; k < n; k++) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                DataInputStream din = new DataInputStream(
+                        new BufferedInputStream(socket.getInputStream()));
+                int s = din.readInt();
+                sockets[s] = socket;
+                in[s] = din;
+                out[s] = new DataOutputStream(
+                        new BufferedOutputStream(socket.getOutputStream()));
+            }
+        }
+
+        // Every shard gets the whole road map, the clock, its stoplights and
+        // the ones near it in the phases they are in, the user car (parked on
+        // all but the first) and its cars
+        Fleet[] cars = split(sim.getCars());
+        for (int s = 0; s < n; s++) {
+            DataOutputStream o = out[s];
+            o.writeInt(left(s));
+            o.writeInt(bottom(s));
+            o.writeInt(right(s));
+            o.writeInt(top(s));
+
+            int[][] roads = sim.getRoads();
+            o.writeInt(roads.length);
+            for (int[] r : roads) {
+                for (int j = 0; j < 4; j++)
+                    o.writeInt(r[j]);
+            }
+            o.writeLong(sim.getTicks());
+            o.writeDouble(sim.getTime());
+
+            List<Stoplight> near = new ArrayList<Stoplight>();
+            for (Stoplight sl : sim.getStoplights()) {
+                if (nearShard(s, sl.getHorizPosition(), sl.getVertPosition()))
+                    near.add(sl);
+            }
+            o.writeInt(near.size());
+            for (Stoplight sl : near) {
+                o.writeInt(sl.getHorizPosition());
+                o.writeInt(sl.getVertPosition());
+                o.writeDouble(sl.getTimeRed());
+                o.writeDouble(sl.getTimeGreen());
+                o.writeInt(sl.getPhase());
+            }
+
+            UserCar uc = sim.getUserCar();
+            Fleet ucFleet = new Fleet(1);
+            ucFleet.add(uc.getFleet(), uc.getIndex());
+            if (s > 0) {
+                ucFleet.vx[0] = 0;
+                ucFleet.vy[0] = 0;
+            }
+            ShardNode.writeCars(o, ucFleet);
+            ShardNode.writeCars(o, cars[s]);
+            o.flush();
+        }
+
+        arriving = new Fleet[n];
+        for (int s = 0; s < n; s++)
+            arriving[s] = new Fleet(1);
+        numAC = sim.getCars().size();
+    }
+
+    // Returns the first cell across the given shard owns (the shards on the
+    // edges of the map own everything past them as well)
+    private int left(int s) {
+        return s % cols == 0 ? Integer.MIN_VALUE : (s % cols) * width / cols;
+    }
+
+    // Returns the first cell down the given shard owns
+    private int bottom(int s) {
+        return s / cols == 0 ? Integer.MIN_VALUE : (s / cols) * height / rows;
+    }
+
+    // Returns one past the last cell across the given shard owns
+    private int right(int s) {
+        return s % cols == cols - 1 ? Integer.MAX_VALUE : (s % cols + 1) * width / cols;
+    }
+
+    // Returns one past the last cell down the given shard owns
+    private int top(int s) {
+        return s / cols == rows - 1 ? Integer.MAX_VALUE : (s / cols + 1) * height / rows;
+    }
+
+    // Returns the shard that owns the cell the given position is in
+    private int shardOf(double x, double y) {
+        int cx = (int) x;
+        int cy = (int) y;
+        int col = 0;
+        while (cx >= right(col))
+            col++;
+        int row = 0;
+        while (cy >= top(row * cols))
+            row++;
+        return row * cols + col;
+    }
+
+    // Checks if the given cell is in the given shard or within its halo
+    private boolean nearShard(int s, int x, int y) {
+        long halo = ShardNode.HALO;
+        return x >= left(s) - halo && x < right(s) + halo
+                && y >= bottom(s) - halo && y < top(s) + halo;
+    }
+
+    // Splits the given cars into a fleet for each shard that owns them
+    private Fleet[] split(Fleet cars) {
+        Fleet[] parts = new Fleet[cols * rows];
+        for (int s = 0; s < parts.length; s++)
+            parts[s] = new Fleet(Math.max(1, cars.size() / parts.length));
+        for (int i = 0; i < cars.size(); i++)
+            parts[shardOf(cars.posX[i], cars.posY[i])].add(cars, i);
+        return parts;
+    }
+
+    // Ticks every shard once, handing each the cars that crossed into it last
+    // tick, and collects the cars that crossed out for the next one
+    public void tick() throws IOException {
+        int n = processes.length;
+        for (int s = 0; s < n; s++) {
+            out[s].writeByte(ShardNode.TICK);
+            ShardNode.writeCars(out[s], arriving[s]);
+            out[s].flush();
+        }
+
+        Fleet[] next = new Fleet[n];
+        for (int s = 0; s < n; s++)
+            next[s] = new Fleet(1);
+        numAC = 0;
+        stopped = 0;
+        for (int s = 0; s < n; s++) {
+            Fleet left = ShardNode.readCars(in[s]);
+            for (int i = 0; i < left.size(); i++)
+                next[shardOf(left.posX[i], left.posY[i])].add(left, i);
+            handoffs += left.size();
+            numAC += left.size();
+
+            busyNanos[s] += in[s].readLong();
+            numAC += in[s].readInt();
+            stopped += in[s].readInt();
+        }
+        moving = numAC - stopped;
+        arriving = next;
+        ticks++;
+    }
+
+    // Stops every shard and returns all their cars, with the user car last
+    public Fleet finish() throws IOException {
+        Fleet all = new Fleet(Math.max(numAC, 1) + 1);
+        Fleet uc = null;
+        for (int s = 0; s < processes.length; s++) {
+            out[s].writeByte(ShardNode.FINISH);
+            out[s].flush();
+        }
+        for (int s = 0; s < processes.length; s++) {
+            Fleet owned = ShardNode.readCars(in[s]);
+            for (int i = 0; i < owned.size(); i++)
+                all.add(owned, i);
+            Fleet shardUc = ShardNode.readCars(in[s]);
+            if (s == 0)
+                uc = shardUc;
+            in[s].readLong();
+        }
+
+        // Cars handed off on the last tick have not reached their new shard yet
+        for (Fleet f : arriving) {
+            for (int i = 0; i < f.size(); i++)
+                all.add(f, i);
+        }
+        all.add(uc, 0);
+        return all;
+    }
+
+    // Closes the connections and waits for the shard processes to end
+    public void close() throws IOException {
+        for (int s = 0; s < processes.length; s++) {
+            if (sockets[s] != null)
+                sockets[s].close();
+        }
+        for (Process p : processes) {
+            if (p == null)
+                continue;
+            try {
+                if (!p.waitFor(5, TimeUnit.SECONDS))
+                    p.destroyForcibly();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                p.destroyForcibly();
+            }
+        }
+    }
+
+    // Returns the number of cars after the last tick
+    public int cars() {
+        return numAC;
+    }
+
+    // Returns the number of cars moving after the last tick
+    public int moving() {
+        return moving;
+    }
+
+    // Returns the number of cars stopped after the last tick
+    public int stopped() {
+        return stopped;
+    }
+
+    // Returns the number of ticks run so far
+    public long ticks() {
+        return ticks;
+    }
+
+    // Returns the number of cars handed from one shard to another so far
+    public long handoffs() {
+        return handoffs;
+    }
+
+    // Returns the seconds the given shard has spent ticking
+    public double busySeconds(int s) {
+        return busyNanos[s] / 1e9;
+    }
+
+    // Returns every car's position and velocity as a sorted list of strings
+    // (the order the cars are kept in differs between a run and its shards)
+    private static String[] states(Fleet cars, int n) {
+        String[] states = new String[n];
+        for (int i = 0; i < n; i++) {
+            states[i] = cars.posX[i] + " " + cars.posY[i] + " " + cars.vx[i] + " "
+                    + cars.vy[i] + " " + cars.color(i).getRGB();
+        }
+        Arrays.sort(states);
+        return states;
+    }
+
+    // Checks if the given cars of a sharded run, with the user car last, are
+    // the cars of the given simulation
+    private static boolean sameCars(Simulation sim, Fleet all) {
+        Fleet cars = sim.getCars();
+        UserCar uc = sim.getUserCar();
+        boolean same = Arrays.equals(states(cars, cars.size()),
+                                     states(all, all.size() - 1));
+        return same && all.posX[all.size() - 1] == uc.getXPosition()
+                && all.posY[all.size() - 1] == uc.getYPosition();
+    }
+
+    // Runs the environment file given as the first argument for the number of
+    // ticks given as the second on the number of shards across and down given
+    // as the third and fourth, and prints the merged counts
+    public static void main(String[] args) throws IOException {
+        String filename = args[0];
+        long numTicks = Long.parseLong(args[1]);
+        int cols = Integer.parseInt(args[2]);
+        int rows = Integer.parseInt(args[3]);
+        Simulation sim = Simulation.open(filename);
+
+        Fleet all;
+        long start = System.nanoTime();
+        try (ShardCoordinator shards = new ShardCoordinator(sim, cols, rows)) {
+            long started = System.nanoTime();
+            for (long t = 0; t < numTicks; t++)
+                shards.tick();
+            double seconds = (System.nanoTime() - started) / 1e9;
+            all = shards.finish();
+
+            StdOut.printf("%d shards started in %.2f s, %d ticks in %.2f s "
+                                  + "(%.0f ticks/s)%n", cols * rows,
+                          (started - start) / 1e9, numTicks, seconds, numTicks / seconds);
+            StdOut.printf("after tick %d cars: %d, moving: %d, stopped: %d, "
+                                  + "handed off: %d%n", shards.ticks(), shards.cars(),
+                          shards.moving(), shards.stopped(), shards.handoffs());
+            for (int s = 0; s < cols * rows; s++)
+                StdOut.printf("shard %d busy %.2f s%n", s, shards.busySeconds(s));
+        }
+
+        // The same run in one process must end with the same cars, and so
+        // must a sharded run picked up from a snapshot of it halfway
+        if (Boolean.getBoolean("check")) {
+            for (long t = 0; t < numTicks / 2; t++)
+                sim.tick();
+            Simulation half = sim.snapshot();
+            for (long t = numTicks / 2; t < numTicks; t++)
+                sim.tick();
+            StdOut.println("same cars as one process: " + sameCars(sim, all)
+                                   + " (expected true)");
+
+            try (ShardCoordinator shards = new ShardCoordinator(half, cols, rows)) {
+                for (long t = numTicks / 2; t < numTicks; t++)
+                    shards.tick();
+                all = shards.finish();
+            }
+            StdOut.println("same cars resumed from a snapshot: " + sameCars(sim, all)
+                                   + " (expected true)");
+        }
+    }
+}
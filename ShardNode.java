@@ -0,0 +1,222 @@
+/* ShardNode.java
+ *
+ *  This class is one process of a sharded simulation. It owns a rectangle
+ *  of the map's cells and simulates the cars in it, on the roads of the
+ *  whole map. A ShardCoordinator starts it and talks to it over a local
+ *  socket. Each tick the coordinator sends it the cars that crossed into
+ *  its rectangle, it ticks its world, and it sends back the cars that
+ *  crossed out along with how many of its cars are moving and stopped.
+ *  It owns the stoplights on its cells and keeps copies of the stoplights
+ *  within a few cells of its edges, which change on the same clock, so
+ *  cars near an edge see the same lights they would in one process. The
+ *  cars never read each other, so a sharded run ends with the same cars in
+ *  the same places as a run in one process. Cars that come or go are added
+ *  to and taken out of the world in place between ticks.
+ *
+ *  Compilation: javac-algs4 ShardNode.java
+ *  Run: started by ShardCoordinator as java ShardNode port shard
+ */
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+public class ShardNode {
+
+    // Messages the coordinator sends
+    static final byte TICK = 1;
+    static final byte FINISH = 2;
+
+    // Cells around a shard's rectangle whose stoplights it keeps copies of
+    // (more than a stop zone reaches and a car looks ahead)
+    static final int HALO = 8;
+
+    // Stores the first and one past the last cells the shard owns, across
+    // and down
+    private final int x0, y0, x1, y1;
+
+    // Stores the simulation of the shard's cars
+    private final Simulation sim;
+
+    // Stores which cars left the rectangle last tick, and how many did
+    private boolean[] leaving = new boolean[0];
+    private int numLeaving;
+
+    // Stores the number of cars handed to other shards
+    private long handedOff;
+
+    // Constructor for the shard owning the given cells, with the given roads,
+    // stoplights, user car and cars in it, picking the world up after the
+    // given number of ticks at the given time (both 0 for a new run)
+    ShardNode(int x0, int y0, int x1, int y1, int[][] roads, Stoplight[] stoplights,
+              UserCar uc, Fleet cars, long ticks, double time) {
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
+        sim = new Simulation(roads, RoadGrid.of(roads), null, uc, cars, stoplights,
+                             ticks, time);
+    }
+
+    // Checks if the shard owns the cell the given position is in
+    boolean owns(double x, double y) {
+        int cx = (int) x;
+        int cy = (int) y;
+        return cx >= x0 && cx < x1 && cy >= y0 && cy < y1;
+    }
+
+    // Ticks the world once, first taking out the cars that crossed out of the
+    // rectangle last tick and taking in the given cars that crossed into it,
+    // and returns the cars that crossed out of it
+    Fleet tick(Fleet arriving) {
+        Fleet cars = sim.getCars();
+        if (numLeaving > 0) {
+            sim.removeCars(leaving);
+            Arrays.fill(leaving, false);
+            numLeaving = 0;
+        }
+        for (int i = 0; i < arriving.size(); i++)
+            sim.addCar(arriving, i);
+
+        sim.tick();
+
+        Fleet left = new Fleet(4);
+        if (leaving.length < cars.size())
+            leaving = new boolean[2 * cars.size()];
+        for (int i = 0; i < cars.size(); i++) {
+            if (!owns(cars.posX[i], cars.posY[i])) {
+                leaving[i] = true;
+                numLeaving++;
+                left.add(cars, i);
+            }
+        }
+        handedOff += left.size();
+        return left;
+    }
+
+    // Returns the cars the shard owns (including any that just left it)
+    Fleet getCars() {
+        return sim.getCars();
+    }
+
+    // Returns the number of cars handed to other shards
+    long handedOff() {
+        return handedOff;
+    }
+
+    // Writes the cars of the given fleet
+    static void writeCars(DataOutputStream out, Fleet cars) throws IOException {
+        out.writeInt(cars.size());
+        for (int i = 0; i < cars.size(); i++) {
+            out.writeDouble(cars.posX[i]);
+            out.writeDouble(cars.posY[i]);
+            out.writeDouble(cars.vx[i]);
+            out.writeDouble(cars.vy[i]);
+            out.writeDouble(cars.speed[i]);
+            out.writeByte(cars.direction[i]);
+            out.writeInt(cars.color(i).getRGB());
+        }
+    }
+
+    // Reads cars written by writeCars into a fleet of their own
+    static Fleet readCars(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        Fleet cars = new Fleet(n);
+        for (int i = 0; i < n; i++) {
+            double x = in.readDouble(), y = in.readDouble();
+            double vx = in.readDouble(), vy = in.readDouble();
+            double speed = in.readDouble();
+            byte direction = in.readByte();
+            int j = cars.add(x, y, vx, vy, new Color(in.readInt()));
+            cars.speed[j] = speed;
+            cars.direction[j] = direction;
+        }
+        return cars;
+    }
+
+    // Connects to the coordinator on the port given as the first argument as
+    // the shard numbered by the second, reads its part of the world, and
+    // answers ticks until told to finish
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+        int shard = Integer.parseInt(args[1]);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(shard);
+            out.flush();
+
+            // The rectangle, the roads, the clock, the stoplights in their phases,
+            // the user car and the cars
+            int x0 = in.readInt(), y0 = in.readInt();
+            int x1 = in.readInt(), y1 = in.readInt();
+            int[][] roads = new int[in.readInt()][4];
+            for (int[] r : roads) {
+                for (int j = 0; j < 4; j++)
+                    r[j] = in.readInt();
+            }
+            long ticks = in.readLong();
+            double time = in.readDouble();
+            Stoplight[] stoplights = new Stoplight[in.readInt()];
+            for (int i = 0; i < stoplights.length; i++) {
+                stoplights[i] = new Stoplight(in.readInt(), in.readInt(),
+                                              in.readDouble(), in.readDouble());
+                int phase = in.readInt();
+                if (phase >= 0)
+                    stoplights[i].setPhase(phase);
+            }
+            Fleet ucFleet = readCars(in);
+            UserCar uc = new UserCar(ucFleet.posX[0], ucFleet.posY[0], ucFleet.vx[0],
+                                     ucFleet.vy[0], ucFleet.color(0));
+            uc.setSpeed(ucFleet.speed[0]);
+            uc.setDirection((char) ucFleet.direction[0]);
+            ShardNode node = new ShardNode(x0, y0, x1, y1, roads, stoplights, uc,
+                                           readCars(in), ticks, time);
+
+            // Each tick answers with the cars that left and the busy nanoseconds,
+            // cars, moving cars and stopped cars of the shard
+            while (in.readByte() == TICK) {
+                Fleet arriving = readCars(in);
+                long start = System.nanoTime();
+                Fleet left = node.tick(arriving);
+                long busy = System.nanoTime() - start;
+
+                writeCars(out, left);
+                Fleet cars = node.getCars();
+                int stopped = 0;
+                for (int i = 0; i < cars.size(); i++) {
+                    if (cars.isStopped(i))
+                        stopped++;
+                }
+                out.writeLong(busy);
+                out.writeInt(cars.size() - left.size());
+                out.writeInt(stopped);
+                out.flush();
+            }
+
+            // Finishing sends back every car the shard owns and the user car
+            Fleet cars = node.getCars();
+            Fleet owned = new Fleet(cars.size());
+            for (int i = 0; i < cars.size(); i++) {
+                if (node.owns(cars.posX[i], cars.posY[i]))
+                    owned.add(cars, i);
+            }
+            writeCars(out, owned);
+            Fleet ucOut = new Fleet(1);
+            ucOut.add(node.sim.getUserCar().getFleet(), 0);
+            writeCars(out, ucOut);
+            out.writeLong(node.handedOff());
+            out.flush();
+        }
+    }
+}
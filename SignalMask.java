@@ -0,0 +1,252 @@
+/* SignalMask.java
+ *
+ *  This class is a layer over the road grid marking the cells blocked by a
+ *  red light, one bit per cell in the same order as RoadGrid, so the roads
+ *  themselves never have to change while the lights do. Only the pages of
+ *  bits that hold a stoplight are ever allocated, so the layer stays small
+ *  on city sized maps. Each cell counts the lights blocking it, so a cell
+ *  shared by two lights stays blocked until both have let it go. Blocking,
+ *  unblocking and checking a cell all take constant time.
+ *
+ *  Compilation: javac-algs4 SignalMask.java
+ *  Run: java-algs4 SignalMask
+ */
+
+import edu.princeton.cs.algs4.StdOut;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+public class SignalMask {
+
+    // Number of words of bits in a page (a power of two)
+    private static final int PAGE_WORDS = 64;
+
+    // Marks an empty slot in the count table
+    private static final long EMPTY = -1;
+
+    // Stores the number of cells in each row and the number of rows
+    private final int width;
+    private final int height;
+
+    // Stores the pages of bits, row by row like RoadGrid (null until a cell
+    // on the page is blocked)
+    private final long[][] pages;
+
+    // Stores the blocked cells as (y << 32 | x) in an open addressing table
+    private long[] cells = new long[16];
+
+    // Stores how many lights block each cell of the table
+    private int[] counts = new int[16];
+
+    // Stores the number of blocked cells
+    private int numBlocked;
+
+    // Constructor that makes a layer with nothing blocked over a width x
+    // height grid
+    public SignalMask(int width, int height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("grid size must be positive");
+        this.width = width;
+        this.height = height;
+
+        long numWords = ((long) width * height + 63) >>> 6;
+        pages = new long[(int) ((numWords + PAGE_WORDS - 1) / PAGE_WORDS)][];
+        Arrays.fill(cells, EMPTY);
+    }
+
+    // Makes a layer the size of the given road grid
+    public static SignalMask over(RoadGrid grid) {
+        return new SignalMask(grid.getWidth(), grid.getHeight());
+    }
+
+    // Checks if the cell at the given x and y positions is blocked
+    // (cells off the map never are)
+    public boolean isBlocked(int py, int px) {
+        if (numBlocked == 0 || py < 0 || py >= height || px < 0 || px >= width)
+            return false;
+        long bit = (long) py * width + px;
+        long word = bit >>> 6;
+        long[] page = pages[(int) (word / PAGE_WORDS)];
+        return page != null && (page[(int) (word % PAGE_WORDS)] & (1L << bit)) != 0;
+    }
+
+    // Adds a light blocking the cell at the given x and y positions, ignoring
+    // cells off the map
+    public void block(int py, int px) {
+        if (py < 0 || py >= height || px < 0 || px >= width)
+            return;
+
+        int slot = find(py, px);
+        if (cells[slot] != EMPTY) {
+            counts[slot]++;
+            return;
+        }
+
+        cells[slot] = key(py, px);
+        counts[slot] = 1;
+        numBlocked++;
+        setBit(py, px, true);
+        if (2 * numBlocked > cells.length)
+            grow();
+    }
+
+    // Takes away a light blocking the cell at the given x and y positions,
+    // ignoring cells that are not blocked
+    public void unblock(int py, int px) {
+        if (numBlocked == 0 || py < 0 || py >= height || px < 0 || px >= width)
+            return;
+
+        int slot = find(py, px);
+        if (cells[slot] == EMPTY || --counts[slot] > 0)
+            return;
+
+        setBit(py, px, false);
+        numBlocked--;
+
+        // Moves later keys of the same run back so lookups never stop early
+        int mask = cells.length - 1;
+        int hole = slot;
+        for (int i = next(slot); cells[i] != EMPTY; i = next(i)) {
+            int home = slot(cells[i]);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                cells[hole] = cells[i];
+                counts[hole] = counts[i];
+                hole = i;
+            }
+        }
+        cells[hole] = EMPTY;
+        counts[hole] = 0;
+    }
+
+    // Returns the number of blocked cells
+    public int numBlocked() {
+        return numBlocked;
+    }
+
+    // Sets or clears the bit of the cell at the given x and y positions
+    private void setBit(int py, int px, boolean blocked) {
+        long bit = (long) py * width + px;
+        long word = bit >>> 6;
+        int p = (int) (word / PAGE_WORDS);
+        if (pages[p] == null)
+            pages[p] = new long[PAGE_WORDS];
+        if (blocked)
+            pages[p][(int) (word % PAGE_WORDS)] |= 1L << bit;
+        else
+            pages[p][(int) (word % PAGE_WORDS)] &= ~(1L << bit);
+    }
+
+    // Returns the table slot holding the given cell, or the empty slot it
+    // would go in
+    private int find(int py, int px) {
+        long key = key(py, px);
+        int slot = slot(key);
+        while (cells[slot] != EMPTY && cells[slot] != key)
+            slot = next(slot);
+        return slot;
+    }
+
+    // Doubles the size of the count table
+    private void grow() {
+        long[] oldCells = cells;
+        int[] oldCounts = counts;
+        cells = new long[2 * oldCells.length];
+        counts = new int[cells.length];
+        Arrays.fill(cells, EMPTY);
+
+        for (int i = 0; i < oldCells.length; i++) {
+            if (oldCells[i] == EMPTY)
+                continue;
+            int slot = slot(oldCells[i]);
+            while (cells[slot] != EMPTY)
+                slot = next(slot);
+            cells[slot] = oldCells[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    // Packs a cell into one long
+    private static long key(int py, int px) {
+        return ((long) py << 32) | (px & 0xFFFFFFFFL);
+    }
+
+    // Returns the first table slot to look in for a key
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & (cells.length - 1);
+    }
+
+    // Returns the table slot after the given one
+    private int next(int slot) {
+        return (slot + 1) & (cells.length - 1);
+    }
+
+    // Tests the methods in the SignalMask class
+    public static void main(String[] args) {
+        SignalMask mask = new SignalMask(100000, 100000);
+        mask.block(49, 50);
+        mask.block(49, 50);
+        mask.block(99999, 99999);
+
+        StdOut.println("(50, 49) blocked: " + mask.isBlocked(49, 50)
+                               + " (expected true)");
+        StdOut.println("(49, 50) blocked: " + mask.isBlocked(50, 49)
+                               + " (expected false)");
+
+        mask.unblock(49, 50);
+        StdOut.println("(50, 49) after one light lets go: " + mask.isBlocked(49, 50)
+                               + " (expected true)");
+        mask.unblock(49, 50);
+        StdOut.println("(50, 49) after both let go: " + mask.isBlocked(49, 50)
+                               + " (expected false)");
+        StdOut.println("blocked cells: " + mask.numBlocked() + " (expected 1)");
+
+        for (int i = 0; i < 1000; i++)
+            mask.block(i, 2 * i);
+        for (int i = 0; i < 1000; i += 2)
+            mask.unblock(i, 2 * i);
+        int blocked = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (mask.isBlocked(i, 2 * i))
+                blocked++;
+        }
+        StdOut.println("blocked of 1000 after unblocking half: " + blocked
+                               + " (expected 500)");
+
+        // The Car demo headless: a car that checks the mask as it stops waits
+        // at the red light, goes again on green and drives to the end of the
+        // track (a red light ahead is not a dead end to turn or halt at)
+        RoadGrid grid = new RoadGrid(100, 100);
+        grid.fill(25, 25, 1, 25);
+        grid.fill(50, 49, 25, 1);
+        grid.fill(75, 58, 1, 10);
+        SignalMask red = SignalMask.over(grid);
+        Fleet cars = new Fleet(1);
+        cars.setRoad(grid, red);
+        cars.add(25, 2, 0, 0.2, Color.BLUE);
+        Stoplight light = new Stoplight(50, 49, 8000, 1500);
+        SignalScheduler signals = new SignalScheduler(new Stoplight[] { light }, null);
+        boolean waited = false;
+        for (int tick = 1; tick <= 5000; tick++) {
+            cars.updatePosition(0, Simulation.DELTA_T);
+            cars.makeTurn(0);
+            signals.advanceTo(tick * Simulation.TICK_MILLIS);
+            int py = light.getVertPosition();
+            int px = light.getHorizPosition();
+            if (light.getPhase() == Stoplight.GREEN) {
+                if (red.isBlocked(py, px))
+                    red.unblock(py, px);
+                cars.accelerate(0, light);
+            }
+            else if (light.getPhase() == Stoplight.RED && !red.isBlocked(py, px)) {
+                red.block(py, px);
+            }
+            cars.stop(0);
+            waited |= cars.isStopped(0) && cars.posX[0] < 75;
+        }
+        StdOut.println("waited at the red light: " + waited + " (expected true)");
+        StdOut.printf("end of the track: %.2f, %.2f (expected 75.00, 67.20)%n",
+                      cars.posX[0], cars.posY[0]);
+    }
+}
@@ -0,0 +1,168 @@
+/* SignalScheduler.java
+ *
+ *  This class changes stoplights on a simulated clock. Instead of working out
+ *  every light's phase every tick, it keeps a priority queue of the time each
+ *  light next changes and only touches a light when its time comes, telling
+ *  a listener about the change. The phases are the same as the ones
+ *  Stoplight.updateLight gives at the time the clock is moved to.
+ *
+ *  Compilation: javac-algs4 SignalScheduler.java
+ *  Run: java-algs4 SignalScheduler
+ */
+
+import edu.princeton.cs.algs4.StdOut;
+
+public class SignalScheduler {
+
+    // Is told every time a stoplight changes phase
+    public interface Listener {
+        void phaseChanged(int light, int phase);
+    }
+
+    // Stores the stoplights
+    private final Stoplight[] stoplights;
+
+    // Stores who is told about phase changes (may be null)
+    private final Listener listener;
+
+    // Stores the time each light next changes phase
+    private final double[] due;
+
+    // Stores the light indices as a binary min heap on due, 1-based
+    private final int[] heap;
+
+    // Stores the simulated time in milliseconds
+    private double time;
+
+    // Constructor that takes the stoplights and who to tell when they change.
+    // Every light reports its phase the first time the clock is moved
+    public SignalScheduler(Stoplight[] stoplights, Listener listener) {
+        this.stoplights = stoplights;
+        this.listener = listener;
+
+        int n = stoplights.length;
+        due = new double[n];
+        heap = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            heap[i + 1] = i;
+        }
+    }
+
+    // Moves the clock forward to the given time in milliseconds, changing
+    // every light whose time has come to its phase at that time
+    public void advanceTo(double newTime) {
+        time = newTime;
+
+        while (heap.length > 1 && due[heap[1]] <= time) {
+            int light = heap[1];
+            Stoplight sl = stoplights[light];
+            int phase = sl.phaseAt(time);
+
+            if (phase != sl.getPhase()) {
+                sl.setPhase(phase);
+                if (listener != null)
+                    listener.phaseChanged(light, phase);
+            }
+
+            due[light] = nextChange(sl, time);
+            sink(1);
+        }
+    }
+
+    // Returns the simulated time in milliseconds
+    public double getTime() {
+        return time;
+    }
+
+    // Returns the time the next light changes (infinity if none ever will)
+    public double nextChange() {
+        return heap.length > 1 ? due[heap[1]] : Double.POSITIVE_INFINITY;
+    }
+
+    // Returns the first time after the given time that the light's phase is
+    // different (infinity if it never changes)
+    private static double nextChange(Stoplight sl, double time) {
+        double cycle = sl.getCycleTime();
+        if (!(cycle > 0))
+            return Double.POSITIVE_INFINITY;
+
+        double offset = time % cycle;
+        double start = time - offset;
+        int phase = sl.phaseAt(time);
+
+        for (int k = 0; k < 3; k++) {
+            double b = boundary(sl, k);
+            if (b > offset && b <= cycle && sl.phaseAt(start + b) != phase)
+                return start + b;
+        }
+
+        // Every boundary left in this cycle keeps the phase, so it next
+        // changes in the next cycle (if at all)
+        for (int k = 0; k < 3; k++) {
+            double b = boundary(sl, k);
+            if (b > 0 && b < cycle && sl.phaseAt(start + cycle + b) != phase)
+                return start + cycle + b;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    // Returns the offset into a cycle of the light's k-th phase boundary: the
+    // end of green, the end of yellow and the end of the cycle
+    private static double boundary(Stoplight sl, int k) {
+        if (k == 0)
+            return sl.getTimeGreen();
+        else if (k == 1)
+            return sl.getTimeGreen() + sl.getTimeYellow();
+        else
+            return sl.getCycleTime();
+    }
+
+    // Moves the light at heap position k down until the heap is in order
+    private void sink(int k) {
+        int n = heap.length - 1;
+        while (2 * k <= n) {
+            int j = 2 * k;
+            if (j < n && due[heap[j + 1]] < due[heap[j]])
+                j++;
+            if (due[heap[k]] <= due[heap[j]])
+                break;
+            swap(k, j);
+            k = j;
+        }
+    }
+
+    // Swaps two heap positions
+    private void swap(int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+    }
+
+    // Tests the methods in the SignalScheduler class by checking it against
+    // Stoplight.updateLight every tick for a few minutes of simulated time
+    public static void main(String[] args) {
+        Stoplight[] lights = {
+                new Stoplight(50, 29, 5000, 2000), new Stoplight(30, 31, 4000, 4000),
+                new Stoplight(28, 67, 4000, 5000), new Stoplight(60, 58, 2000, 1400)
+        };
+        Stoplight[] check = {
+                new Stoplight(50, 29, 5000, 2000), new Stoplight(30, 31, 4000, 4000),
+                new Stoplight(28, 67, 4000, 5000), new Stoplight(60, 58, 2000, 1400)
+        };
+
+        int[] changes = new int[1];
+        SignalScheduler s = new SignalScheduler(lights, (light, phase) -> changes[0]++);
+
+        int mismatches = 0;
+        for (int t = Simulation.TICK_MILLIS; t <= 300000; t += Simulation.TICK_MILLIS) {
+            s.advanceTo(t);
+            for (int i = 0; i < lights.length; i++) {
+                if (lights[i].getPhase() != check[i].updateLight(t))
+                    mismatches++;
+            }
+        }
+
+        StdOut.println("phase changes: " + changes[0]);
+        StdOut.println("mismatches: " + mismatches + " (expected 0)");
+    }
+}
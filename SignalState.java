@@ -0,0 +1,102 @@
+/* SignalState.java
+ *
+ *  This class is a snapshot of the stoplights for one tick: which lights are
+ *  green and which road cells are blocked by a red light. The simulation
+ *  updates a back snapshot while nothing reads it, then swaps it to the front
+ *  where the cars only read it, so the cars can be updated on many threads.
+ *  Only the lights that changed phase are updated, and the red cells are
+ *  kept in a SignalMask layer over the roads rather than in the roads.
+ *
+ *  Compilation: javac-algs4 SignalState.java
+ *  Run: java-algs4 SignalState
+ */
+
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.Arrays;
+
+public class SignalState {
+
+    // Stores the indices of the green stoplights
+    private final int[] green;
+
+    // Stores where each stoplight is in green (-1 if it is not green)
+    private final int[] greenPos;
+
+    // Stores the number of green stoplights
+    private int numGreen;
+
+    // Stores whether each stoplight is counted as red
+    private final boolean[] red;
+
+    // Stores the cells blocked by red lights
+    private final SignalMask redCells;
+
+    // Constructor that makes room for the given number of stoplights on a
+    // width x height grid
+    public SignalState(int numSL, int width, int height) {
+        green = new int[Math.max(numSL, 1)];
+        greenPos = new int[numSL];
+        Arrays.fill(greenPos, -1);
+        red = new boolean[numSL];
+        redCells = new SignalMask(width, height);
+    }
+
+    // Records the phase of the stoplight at the given index, which sits at
+    // the given x and y positions
+    public void update(int light, int phase, int py, int px) {
+        boolean isGreen = phase == Stoplight.GREEN;
+        if (isGreen && greenPos[light] < 0) {
+            greenPos[light] = numGreen;
+            green[numGreen++] = light;
+        }
+        else if (!isGreen && greenPos[light] >= 0) {
+            int last = green[--numGreen];
+            green[greenPos[light]] = last;
+            greenPos[last] = greenPos[light];
+            greenPos[light] = -1;
+        }
+
+        boolean isRed = phase == Stoplight.RED;
+        if (isRed != red[light]) {
+            red[light] = isRed;
+            if (isRed)
+                redCells.block(py, px);
+            else
+                redCells.unblock(py, px);
+        }
+    }
+
+    // Checks if the cell at the given x and y positions is blocked by a red light
+    public boolean isRed(int py, int px) {
+        return redCells.isBlocked(py, px);
+    }
+
+    // Returns the number of green stoplights
+    public int numGreen() {
+        return numGreen;
+    }
+
+    // Returns the index of the i-th green stoplight
+    public int green(int i) {
+        return green[i];
+    }
+
+    // Tests the methods in the SignalState class
+    public static void main(String[] args) {
+        SignalState s = new SignalState(3, 100, 100);
+        s.update(0, Stoplight.GREEN, 29, 50);
+        s.update(1, Stoplight.RED, 49, 50);
+        s.update(2, Stoplight.RED, 31, 30);
+
+        StdOut.println("green lights: " + s.numGreen() + " (expected 1)");
+        StdOut.println("(50, 49) red: " + s.isRed(49, 50) + " (expected true)");
+        StdOut.println("(49, 50) red: " + s.isRed(50, 49) + " (expected false)");
+
+        s.update(0, Stoplight.YELLOW, 29, 50);
+        s.update(1, Stoplight.GREEN, 49, 50);
+        StdOut.println("green lights: " + s.numGreen() + " (expected 1)");
+        StdOut.println("(50, 49) red: " + s.isRed(49, 50) + " (expected false)");
+        StdOut.println("(30, 31) red: " + s.isRed(31, 30) + " (expected true)");
+    }
+}
@@ -0,0 +1,649 @@
+/* Simulation.java
+ *
+ *  This class runs the driving simulator on a simulated clock instead of the
+ *  wall clock, so the world can be stepped as fast as the CPU allows with no
+ *  window open. A MapView can be attached to draw every tick in a window,
+ *  or the world can be ticked at a fixed rate while a RenderLoop draws the
+ *  frames it publishes on another thread, which is how the Client runs it.
+ *  The cars can also be updated in parallel on a ForkJoinPool with the same
+ *  results as a sequential run.
+ *
+ *  Compile: javac-algs4 Simulation.java
+ *  Run: java-algs4 Simulation 100000 < ./Environment-Files/Environment1.txt
+ *  or java-algs4 Simulation 100000 8 < ./Environment-Files/Environment1.txt
+ *  to update the cars on 8 threads
+ */
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.LockSupport;
+
+public class Simulation {
+
+    // How far the cars are moved each tick (matches the original frame loop)
+    public static final double DELTA_T = 2;
+
+    // How many simulated milliseconds pass each tick (one frame of StdDraw.show)
+    public static final int TICK_MILLIS = 20;
+
+    // How many ticks pass each second of real time when the clock is kept
+    public static final double TICKS_PER_SECOND = 1000.0 / TICK_MILLIS;
+
+    // Most ticks a run at a fixed rate makes up at once when it falls behind
+    private static final int MAX_CATCH_UP = 5;
+
+    // Fewest cars a parallel task will split the fleet into
+    private static final int PARALLEL_GRAIN = 8192;
+
+    // Stores the roads as { xCenter, yCenter, halfWidth, halfHeight }
+    private final int[][] roads;
+
+    // Stores which cells are road, sized to fit the roads
+    private final RoadGrid grid;
+
+    // Stores the user powered car
+    private final UserCar uc;
+
+    // Stores the autonomous cars
+    private final Fleet cars;
+
+    // Stores the stoplights
+    private final Stoplight[] stoplights;
+
+    // Changes the stoplights on the simulated clock
+    private final SignalScheduler signals;
+
+    // Stores the stoplights that changed phase this tick and last tick
+    private int[] changed, lastChanged;
+
+    // Stores how many stoplights changed phase this tick and last tick
+    private int numChanged, numLastChanged;
+
+    // Stores the stoplight snapshot the cars read during the current tick
+    private SignalState front;
+
+    // Stores the stoplight snapshot being filled in for the next tick
+    private SignalState back;
+
+    // Stores which cars are waiting on which stoplights
+    private final StopZones zones;
+
+    // Stores which cars a green light starts again this tick
+    private boolean[] wake;
+
+    // Stores the car each index holds while cars are taken out, and the new
+    // index of each car after (both null until cars are first taken out)
+    private int[] carAt, newIndex;
+
+    // Stores where the cars were at the start of the tick when they avoid
+    // each other (null when they drive through each other)
+    private SpatialHash nearby;
+
+    // Stores the pool the cars are updated on (null to update them in sequence)
+    private ForkJoinPool pool;
+
+    // Stores the keyboard the user car is driven with (null when headless)
+    private Keyboard keyboard;
+
+    // Stores the keys taken from the keyboard at the start of a tick and the
+    // System.nanoTime each was typed at
+    private final char[] keys = new char[Keyboard.MAX_PENDING];
+    private final long[] keyNanos = new long[Keyboard.MAX_PENDING];
+
+    // Stores the view every tick is drawn in (null when headless)
+    private MapView view;
+
+    // Stores the log keys and stoplight changes are recorded to (null if none)
+    private EventLog.Recorder recorder;
+
+    // Stores the metrics each phase of a step is timed in (null if none)
+    private TickMetrics metrics;
+
+    // Stores the number of ticks that have been simulated
+    private long ticks;
+
+    // Stores the simulated time in milliseconds
+    private double time;
+
+    // Constructor that takes the roads, user car, autonomous cars and stoplights
+    // of an environment and lays the roads out in a grid of their own
+    public Simulation(int[][] roads, UserCar uc, Fleet cars, Stoplight[] stoplights) {
+        this(roads, RoadGrid.of(roads), null, uc, cars, stoplights, 0, 0);
+    }
+
+    // Constructor that picks a world up after the given number of ticks at the
+    // given time, with the stoplights already in the phases they were in. The
+    // roads are laid out in the given grid, and the cars turn with a copy of
+    // the given turn table (or a new one if it is null)
+    Simulation(int[][] roads, RoadGrid grid, TurnTable turns, UserCar uc, Fleet cars,
+               Stoplight[] stoplights, long ticks, double time) {
+        this.roads = roads;
+        this.grid = grid;
+        this.uc = uc;
+        this.cars = cars;
+        this.stoplights = stoplights;
+        this.ticks = ticks;
+        this.time = time;
+
+        cars.setRoad(grid);
+        if (turns == null)
+            cars.setTurnTable(new TurnTable(grid, new LaneGraph(grid)));
+        else
+            cars.setTurnTable(new TurnTable(turns));
+        uc.getFleet().setRoad(grid);
+
+        front = new SignalState(stoplights.length, grid.getWidth(), grid.getHeight());
+        back = new SignalState(stoplights.length, grid.getWidth(), grid.getHeight());
+        changed = new int[stoplights.length];
+        lastChanged = new int[stoplights.length];
+        signals = new SignalScheduler(stoplights, (light, phase) -> {
+            changed[numChanged++] = light;
+        });
+
+        // Both snapshots start out with the phases the lights are already in,
+        // so the scheduler only reports the lights that change from them
+        for (int i = 0; i < stoplights.length; i++) {
+            changed[numChanged++] = i;
+        }
+        updateSignals(front, changed, numChanged);
+        updateSignals(back, changed, numChanged);
+        for (Stoplight sl : stoplights) {
+            int py = sl.getVertPosition();
+            int px = sl.getHorizPosition();
+            if (front.isRed(py, px))
+                cars.getTurnTable().setRed(py, px, true);
+        }
+        numChanged = 0;
+
+        // Cars that start out stopped wait on the lights they are close to
+        zones = new StopZones(stoplights);
+        wake = new boolean[cars.size()];
+        for (int i = 0; i < cars.size(); i++) {
+            if (cars.isStopped(i))
+                zones.register(i, cars.posX[i], cars.posY[i]);
+        }
+    }
+
+    // Reads an environment in the Client input format and builds the simulation
+    public static Simulation read(In in) {
+        int numAC = in.readInt();
+        int numRoads = in.readInt();
+        int numSL = in.readInt();
+
+        int[][] roads = new int[numRoads][4];
+        Fleet cars = new Fleet(numAC);
+        Stoplight[] stoplights = new Stoplight[numSL];
+
+        UserCar uc = new UserCar(in.readDouble(), in.readDouble(),
+                                 in.readDouble(), in.readDouble(),
+                                 new Color(in.readInt(), in.readInt(), in.readInt()));
+
+        for (int i = 0; i < numAC; i++) {
+            cars.add(in.readDouble(), in.readDouble(),
+                     in.readDouble(), in.readDouble(),
+                     new Color(in.readInt(), in.readInt(), in.readInt()));
+        }
+
+        for (int i = 0; i < numRoads; i++) {
+            for (int j = 0; j < 4; j++)
+                roads[i][j] = in.readInt();
+        }
+
+        for (int i = 0; i < numSL; i++) {
+            stoplights[i] = new Stoplight(in.readInt(), in.readInt(),
+                                          in.readInt(), in.readInt());
+        }
+
+        return new Simulation(roads, uc, cars, stoplights);
+    }
+
+    // Builds the simulation from an environment file, which is loaded as a
+    // binary scenario file if its name ends in .sim and read as text otherwise
+    public static Simulation open(String filename) {
+        if (!ScenarioFile.isScenarioFile(filename))
+            return read(new In(filename));
+        try {
+            return ScenarioFile.load(filename);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("could not open " + filename, e);
+        }
+    }
+
+    // Takes a snapshot of the whole world as it is now: the clock, every car
+    // and the phase of every stoplight. The snapshot is a simulation of its
+    // own, sharing only the roads, their grid and the lane segments, which
+    // never change, so taking one does not lay the roads out again. Running
+    // the snapshot forks the run, and taking snapshots of the snapshot
+    // restores it as many times as needed. Keyboards, views, pools, logs and
+    // collision avoidance are not part of the world and are left off
+    public Simulation snapshot() {
+        Stoplight[] lights = new Stoplight[stoplights.length];
+        for (int i = 0; i < lights.length; i++) {
+            Stoplight sl = stoplights[i];
+            lights[i] = new Stoplight(sl.getHorizPosition(), sl.getVertPosition(),
+                                      sl.getTimeRed(), sl.getTimeGreen());
+            if (sl.getPhase() >= 0)
+                lights[i].setPhase(sl.getPhase());
+        }
+
+        UserCar u = new UserCar(uc.getXPosition(), uc.getYPosition(),
+                                uc.getXVelo(), uc.getYVelo(), uc.getColor());
+        u.setSpeed(uc.getSpeed());
+        u.setDirection(uc.getDirection());
+
+        return new Simulation(roads, grid, cars.getTurnTable(), u, cars.copy(),
+                              lights, ticks, time);
+    }
+
+    // Drives the user car with the given keyboard at the start of every tick
+    public void attachKeyboard(Keyboard k) {
+        keyboard = k;
+    }
+
+    // Draws every tick in a window and paces the loop to the display
+    public void attachRenderer() {
+        view = new MapView(roads, grid);
+        view.open();
+    }
+
+    // Updates the cars on the given pool every tick (null to update them in
+    // sequence on the calling thread)
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Makes a moving car wait instead of moving onto another car (where the
+    // other car was at the start of the tick). This changes the results, so
+    // it is off unless turned on here
+    public void setCollisionAvoidance(boolean avoid) {
+        nearby = avoid ? new SpatialHash(2 * Fleet.RAD) : null;
+    }
+
+    // Records every key and stoplight change from now on to the given log
+    public void record(EventLog.Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    // Stops recording, writing a last checkpoint and closing the log
+    public void stopRecording() {
+        if (recorder == null)
+            return;
+        recorder.checkpoint(ticks, checksum());
+        recorder.close();
+        recorder = null;
+    }
+
+    // Times every phase of every step in the given metrics from now on (null
+    // to stop timing)
+    public void setMetrics(TickMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Gives the user car a key before the next tick, recording it if a log
+    // is being recorded
+    public void input(char c) {
+        if (recorder != null)
+            recorder.key(ticks, c);
+        uc.apply(c);
+    }
+
+    // Advances the simulation by one tick, checking for keyboard input and
+    // drawing the world first if they are attached
+    public void step() {
+        readKeyboard();
+
+        long t = metrics != null ? metrics.start() : 0;
+        if (view != null) {
+            view.draw(uc, cars, stoplights);
+        }
+        if (metrics != null)
+            metrics.lap(TickMetrics.DRAW, ticks, t);
+
+        tick();
+
+        // Waiting for the next frame is pacing, so it is not timed
+        t = metrics != null ? metrics.start() : 0;
+        if (view != null) {
+            view.show();
+        }
+        if (metrics != null)
+            metrics.lap(TickMetrics.SHOW, ticks - 1, t);
+        if (view != null) {
+            pause(TICK_MILLIS);
+        }
+    }
+
+    // Gives the user car every key typed on the keyboard since the last
+    // tick in one batch, recording them if a log is being recorded
+    private void readKeyboard() {
+        long t = metrics != null ? metrics.start() : 0;
+        int n = keyboard != null ? keyboard.drainKeys(keys, keyNanos) : 0;
+        if (recorder != null) {
+            for (int i = 0; i < n; i++)
+                recorder.key(ticks, keys[i]);
+        }
+        uc.applyAll(keys, n);
+
+        if (metrics != null) {
+            t = metrics.lap(TickMetrics.INPUT, ticks, t);
+            for (int i = 0; i < n; i++)
+                metrics.record(TickMetrics.KEY_LAG, ticks, t - keyNanos[i]);
+        }
+    }
+
+    // Ticks at the given number of ticks per second of real time on the
+    // calling thread until it is interrupted, reading the keyboard before
+    // every tick and publishing a frame of the world after it. Drawing is
+    // left to whoever reads the frames, so a slow draw never slows the ticks.
+    // A run that falls behind makes up at most MAX_CATCH_UP ticks at once
+    public void runAtRate(double ticksPerSecond, FrameBuffer frames) {
+        long period = (long) (1e9 / ticksPerSecond);
+        long next = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            synchronized (this) {
+                readKeyboard();
+                tick();
+                frames.publish(this);
+            }
+
+            next += period;
+            long wait = next - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+            else if (-wait > MAX_CATCH_UP * period)
+                next = System.nanoTime();
+        }
+    }
+
+    // Runs the given number of steps
+    public void run(long numTicks) {
+        for (long i = 0; i < numTicks; i++) {
+            step();
+        }
+    }
+
+    // Advances the world by one fixed time step without touching standard draw
+    public void tick() {
+        long t = metrics != null ? metrics.start() : 0;
+        time += TICK_MILLIS;
+
+        // Changes the stoplights whose time has come before any car reads
+        // them. The back snapshot missed last tick's changes as well
+        numChanged = 0;
+        signals.advanceTo(time);
+        if (recorder != null) {
+            for (int k = 0; k < numChanged; k++)
+                recorder.signal(ticks, changed[k], stoplights[changed[k]].getPhase());
+        }
+        updateSignals(back, lastChanged, numLastChanged);
+        updateSignals(back, changed, numChanged);
+
+        SignalState swapState = front;
+        front = back;
+        back = swapState;
+
+        // The turn table's red cells follow the lights that changed
+        TurnTable turns = cars.getTurnTable();
+        for (int k = 0; k < numChanged; k++) {
+            Stoplight sl = stoplights[changed[k]];
+            int py = sl.getVertPosition();
+            int px = sl.getHorizPosition();
+            turns.setRed(py, px, front.isRed(py, px));
+        }
+
+        int[] swapChanged = lastChanged;
+        lastChanged = changed;
+        changed = swapChanged;
+        numLastChanged = numChanged;
+
+        // Green lights only look at the cars queued on them
+        zones.wake(cars, wake);
+        if (metrics != null)
+            t = metrics.lap(TickMetrics.SIGNALS, ticks, t);
+
+        // The user car never reads the stoplights or the other cars
+        uc.updatePosition(DELTA_T);
+
+        if (nearby != null)
+            nearby.rebuild(cars);
+
+        // Each car only reads the roads, the stoplights and its own fields,
+        // so the fleet can be split across threads in any way
+        int numAC = cars.size();
+        if (pool == null || numAC <= PARALLEL_GRAIN)
+            tickCars(0, numAC);
+        else
+            pool.invoke(new CarTask(0, numAC));
+        if (metrics != null)
+            metrics.lap(TickMetrics.CARS, ticks, t);
+
+        ticks++;
+        if (recorder != null && ticks % EventLog.CHECKPOINT_TICKS == 0)
+            recorder.checkpoint(ticks, checksum());
+        if (metrics != null)
+            metrics.ticked(cars);
+    }
+
+    // Takes the cars marked in the given array out of the world between ticks,
+    // moving the last cars into their places. The cars waiting on stoplights
+    // keep waiting under their new indices
+    void removeCars(boolean[] leaving) {
+        int n = cars.size();
+        if (carAt == null || carAt.length < n) {
+            carAt = new int[n];
+            newIndex = new int[n];
+        }
+        for (int i = 0; i < n; i++)
+            carAt[i] = i;
+
+        // Going down, every index above i holds a car that stays
+        for (int i = n - 1; i >= 0; i--) {
+            if (leaving[i]) {
+                carAt[i] = carAt[cars.size() - 1];
+                cars.remove(i);
+            }
+        }
+
+        Arrays.fill(newIndex, 0, n, -1);
+        for (int i = 0; i < cars.size(); i++)
+            newIndex[carAt[i]] = i;
+        zones.renumber(newIndex);
+    }
+
+    // Adds a copy of the car at index i of the given fleet to the world between
+    // ticks, waiting on the stoplights it is close to if it is stopped
+    void addCar(Fleet from, int i) {
+        int j = cars.add(from, i);
+        if (wake.length < cars.size())
+            wake = Arrays.copyOf(wake, 2 * cars.size());
+        if (cars.isStopped(j))
+            zones.register(j, cars.posX[j], cars.posY[j]);
+    }
+
+    // Returns a hash of everything that changes as the world is simulated
+    // (the clock, the stoplights and where every car is and is going) and of
+    // the roads, so two runs that agree on it are in the same state
+    public long checksum() {
+        long h = mix(0, ticks);
+        h = mix(h, Double.doubleToLongBits(time));
+        for (int[] r : roads) {
+            h = mix(h, ((long) r[0] << 32) ^ r[1]);
+            h = mix(h, ((long) r[2] << 32) ^ r[3]);
+        }
+        for (Stoplight sl : stoplights) {
+            h = mix(h, ((long) sl.getHorizPosition() << 32) ^ sl.getVertPosition());
+            h = mix(h, Double.doubleToLongBits(sl.getTimeRed()));
+            h = mix(h, Double.doubleToLongBits(sl.getTimeGreen()));
+            h = mix(h, sl.getPhase());
+        }
+
+        h = mix(h, Double.doubleToLongBits(uc.getXPosition()));
+        h = mix(h, Double.doubleToLongBits(uc.getYPosition()));
+        h = mix(h, Double.doubleToLongBits(uc.getXVelo()));
+        h = mix(h, Double.doubleToLongBits(uc.getYVelo()));
+        for (int i = 0; i < cars.size(); i++) {
+            h = mix(h, Double.doubleToLongBits(cars.posX[i]));
+            h = mix(h, Double.doubleToLongBits(cars.posY[i]));
+            h = mix(h, Double.doubleToLongBits(cars.vx[i]));
+            h = mix(h, Double.doubleToLongBits(cars.vy[i]));
+        }
+        return h;
+    }
+
+    // Mixes a value into a running hash
+    private static long mix(long h, long v) {
+        h = (h ^ v) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 31);
+    }
+
+    // Records the phases of the given stoplights in a snapshot
+    private void updateSignals(SignalState state, int[] lights, int n) {
+        for (int i = 0; i < n; i++) {
+            Stoplight sl = stoplights[lights[i]];
+            state.update(lights[i], sl.getPhase(), sl.getVertPosition(),
+                         sl.getHorizPosition());
+        }
+    }
+
+    // Moves the cars with indices lo (inclusive) to hi (exclusive) one tick,
+    // turning them at dead ends and stopping or starting them at stoplights
+    private void tickCars(int lo, int hi) {
+        SignalState signals = front;
+
+        for (int i = lo; i < hi; i++) {
+            boolean moved = !cars.isStopped(i);
+
+            cars.makeTurn(i);
+            if (nearby == null || !blocked(i))
+                cars.updatePosition(i, DELTA_T);
+
+            if (wake[i]) {
+                wake[i] = false;
+                cars.resume(i);
+                moved = true;
+            }
+
+            cars.stop(i, signals);
+
+            // A car that has just stopped waits on the lights it is close to
+            if (moved && cars.isStopped(i))
+                zones.register(i, cars.posX[i], cars.posY[i]);
+        }
+    }
+
+    // Checks if the car at index i would move onto another car this tick
+    private boolean blocked(int i) {
+        if (cars.isStopped(i))
+            return false;
+        return nearby.occupied(i, cars.posX[i] + cars.vx[i] * DELTA_T,
+                               cars.posY[i] + cars.vy[i] * DELTA_T, Fleet.RAD);
+    }
+
+    // Returns the number of pairs of cars that overlap each other
+    public int countOverlaps() {
+        SpatialHash hash = new SpatialHash(2 * Fleet.RAD);
+        hash.rebuild(cars);
+        return hash.overlaps(Fleet.RAD, new int[0]);
+    }
+
+    // Task that ticks a range of the fleet, splitting it in half until it is
+    // small enough to run on one thread
+    private class CarTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // Range of car indices to tick, lo inclusive and hi exclusive
+        private final int lo, hi;
+
+        private CarTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo <= PARALLEL_GRAIN) {
+                tickCars(lo, hi);
+                return;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new CarTask(lo, mid), new CarTask(mid, hi));
+        }
+    }
+
+    // Waits the given number of milliseconds between frames
+    private static void pause(int millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Returns the number of ticks that have been simulated
+    public long getTicks() {
+        return ticks;
+    }
+
+    // Returns the simulated time in milliseconds
+    public double getTime() {
+        return time;
+    }
+
+    // Returns the roads as { xCenter, yCenter, halfWidth, halfHeight }
+    public int[][] getRoads() {
+        return roads;
+    }
+
+    // Returns the road grid
+    public RoadGrid getGrid() {
+        return grid;
+    }
+
+    // Returns the user car
+    public UserCar getUserCar() {
+        return uc;
+    }
+
+    // Returns the autonomous cars
+    public Fleet getCars() {
+        return cars;
+    }
+
+    // Returns the stoplights
+    public Stoplight[] getStoplights() {
+        return stoplights;
+    }
+
+    // Runs an environment from standard input headlessly for the number of
+    // ticks given as a command line argument (and optionally the number of
+    // threads to update the cars on) and prints how fast it went
+    public static void main(String[] args) {
+        long numTicks = Long.parseLong(args[0]);
+        Simulation sim = read(new In());
+
+        if (args.length > 1)
+            sim.setPool(new ForkJoinPool(Integer.parseInt(args[1])));
+
+        long start = System.nanoTime();
+        sim.run(numTicks);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        StdOut.printf("%d ticks in %.3f s (%.0f ticks/s)%n",
+                      sim.getTicks(), seconds, sim.getTicks() / seconds);
+
+        StdOut.println("overlapping pairs of cars: " + sim.countOverlaps());
+
+        Fleet cars = sim.getCars();
+        for (int i = 0; i < cars.size(); i++) {
+            StdOut.printf("car %d: x = %.2f, y = %.2f%n", i, cars.posX[i], cars.posY[i]);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/* SpatialHash.java
+ *
+ *  This class buckets cars by the square cell of a uniform grid they are in,
+ *  so the cars near a point can be found without looking at every car. The
+ *  cells are hashed into a table about twice the size of the fleet, so the
+ *  table stays small no matter how large the map is. It is rebuilt from the
+ *  fleet with a counting sort and keeps its own copy of the positions, so it
+ *  can be read from many threads while the fleet is being moved.
+ *
+ *  Compilation: javac-algs4 SpatialHash.java
+ *  Run: java-algs4 SpatialHash 100000
+ */
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+public class SpatialHash {
+
+    // Stores the side of a cell in map units
+    private final double cellSize;
+
+    // Stores where each bucket's cars start in the sorted arrays (one extra
+    // entry at the end marks where the last bucket stops)
+    private int[] bucketStart = new int[2];
+
+    // Stores the fleet index of each car, sorted by bucket
+    private int[] car = new int[1];
+
+    // Stores the cell column and row of each car, sorted by bucket
+    private int[] cellX = new int[1];
+    private int[] cellY = new int[1];
+
+    // Stores the position of each car when the hash was built, sorted by bucket
+    private double[] posX = new double[1];
+    private double[] posY = new double[1];
+
+    // Stores the bucket of each car by fleet index
+    private int[] bucketOf = new int[1];
+
+    // Stores the number of cars in the hash
+    private int size;
+
+    // Constructor that takes the side of a cell, which should be at least as
+    // large as the distances that will be asked about
+    public SpatialHash(double cellSize) {
+        if (!(cellSize > 0))
+            throw new IllegalArgumentException("cell size must be positive");
+        this.cellSize = cellSize;
+    }
+
+    // Puts every car of the fleet in its cell at its current position
+    public void rebuild(Fleet cars) {
+        size = cars.size();
+        if (car.length < size) {
+            int capacity = Math.max(size, 2 * car.length);
+            car = new int[capacity];
+            cellX = new int[capacity];
+            cellY = new int[capacity];
+            posX = new double[capacity];
+            posY = new double[capacity];
+            bucketOf = new int[capacity];
+        }
+
+        int buckets = Integer.highestOneBit(Math.max(2 * size - 1, 1)) * 2;
+        if (bucketStart.length != buckets + 1)
+            bucketStart = new int[buckets + 1];
+        else
+            Arrays.fill(bucketStart, 0);
+
+        // Counts the cars in each bucket, then sums the counts into starts
+        for (int i = 0; i < size; i++) {
+            int b = bucket(cell(cars.posX[i]), cell(cars.posY[i]));
+            bucketOf[i] = b;
+            bucketStart[b + 1]++;
+        }
+        for (int b = 0; b < buckets; b++)
+            bucketStart[b + 1] += bucketStart[b];
+
+        // Drops every car in the next free place of its bucket, keeping
+        // bucketStart pointing at the start of each bucket afterwards
+        for (int i = 0; i < size; i++) {
+            int at = bucketStart[bucketOf[i]]++;
+            car[at] = i;
+            posX[at] = cars.posX[i];
+            posY[at] = cars.posY[i];
+            cellX[at] = cell(posX[at]);
+            cellY[at] = cell(posY[at]);
+        }
+        for (int b = buckets; b > 0; b--)
+            bucketStart[b] = bucketStart[b - 1];
+        bucketStart[0] = 0;
+    }
+
+    // Returns the number of cars in the hash
+    public int size() {
+        return size;
+    }
+
+    // Finds the cars closer than r to the given x and y positions, writing
+    // as many of their fleet indices as fit in out, and returns how many there are
+    public int neighborsWithin(double x, double y, double r, int[] out) {
+        int found = 0;
+        int x0 = cell(x - r);
+        int x1 = cell(x + r);
+        int y0 = cell(y - r);
+        int y1 = cell(y + r);
+
+        for (int cy = y0; cy <= y1; cy++) {
+            for (int cx = x0; cx <= x1; cx++) {
+                int b = bucket(cx, cy);
+                for (int k = bucketStart[b]; k < bucketStart[b + 1]; k++) {
+                    if (cellX[k] != cx || cellY[k] != cy)
+                        continue;
+                    double dx = posX[k] - x;
+                    double dy = posY[k] - y;
+                    if (dx * dx + dy * dy < r * r) {
+                        if (found < out.length)
+                            out[found] = car[k];
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // Checks if a car other than the given one has a square of the given half
+    // side overlapping a square of that size at the given x and y positions
+    public boolean occupied(int self, double x, double y, double half) {
+        int x0 = cell(x - 2 * half);
+        int x1 = cell(x + 2 * half);
+        int y0 = cell(y - 2 * half);
+        int y1 = cell(y + 2 * half);
+
+        for (int cy = y0; cy <= y1; cy++) {
+            for (int cx = x0; cx <= x1; cx++) {
+                int b = bucket(cx, cy);
+                for (int k = bucketStart[b]; k < bucketStart[b + 1]; k++) {
+                    if (car[k] != self && cellX[k] == cx && cellY[k] == cy
+                            && Math.abs(posX[k] - x) < 2 * half
+                            && Math.abs(posY[k] - y) < 2 * half)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Counts the pairs of cars whose squares of the given half side overlap,
+    // writing as many pairs of fleet indices as fit in pairs
+    public int overlaps(double half, int[] pairs) {
+        int found = 0;
+        for (int k = 0; k < size; k++) {
+            int i = car[k];
+            for (int cy = cellY[k] - 1; cy <= cellY[k] + 1; cy++) {
+                for (int cx = cellX[k] - 1; cx <= cellX[k] + 1; cx++) {
+                    int b = bucket(cx, cy);
+                    for (int m = bucketStart[b]; m < bucketStart[b + 1]; m++) {
+                        int j = car[m];
+                        if (j <= i || cellX[m] != cx || cellY[m] != cy)
+                            continue;
+                        if (Math.abs(posX[m] - posX[k]) < 2 * half
+                                && Math.abs(posY[m] - posY[k]) < 2 * half) {
+                            if (2 * found + 1 < pairs.length) {
+                                pairs[2 * found] = i;
+                                pairs[2 * found + 1] = j;
+                            }
+                            found++;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // Returns the cell a coordinate is in
+    private int cell(double v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    // Returns the bucket of a cell
+    private int bucket(int cx, int cy) {
+        long h = (cx * 0x9E3779B97F4A7C15L) ^ (cy * 0xC2B2AE3D27D4EB4FL);
+        h ^= h >>> 29;
+        return (int) h & (bucketStart.length - 2);
+    }
+
+    // Tests the methods in the SpatialHash class against checking every pair
+    // of the number of random cars given as an argument
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        Fleet cars = new Fleet(n);
+        for (int i = 0; i < n; i++)
+            cars.add(StdRandom.uniformDouble(0, 500), StdRandom.uniformDouble(0, 500),
+                     0, 0, Color.BLUE);
+
+        SpatialHash hash = new SpatialHash(2 * Fleet.RAD);
+        long start = System.nanoTime();
+        hash.rebuild(cars);
+        int found = hash.overlaps(Fleet.RAD, new int[0]);
+        double millis = (System.nanoTime() - start) / 1e6;
+
+        int expected = 0;
+        if (n <= 20000) {
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    if (Math.abs(cars.posX[i] - cars.posX[j]) < 2 * Fleet.RAD
+                            && Math.abs(cars.posY[i] - cars.posY[j]) < 2 * Fleet.RAD)
+                        expected++;
+                }
+            }
+        }
+
+        StdOut.printf("%d overlapping pairs in %.1f ms%n", found, millis);
+        if (n <= 20000)
+            StdOut.println("checking every pair: " + expected);
+
+        int[] near = new int[16];
+        int k = hash.neighborsWithin(250, 250, 3, near);
+        StdOut.println("cars within 3 of (250, 250): " + k);
+    }
+}
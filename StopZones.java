@@ -0,0 +1,287 @@
+/* StopZones.java
+ *
+ *  This class works out once which cells are close enough to each stoplight
+ *  for a car stopped there to be started again when it turns green (closer
+ *  than 2, like Car.accelerate checks). A car that stops in one of these
+ *  cells is queued on the light, and when the light is green only its queued
+ *  cars are looked at instead of every car for every light.
+ *
+ *  Compilation: javac-algs4 StopZones.java
+ *  Run: java-algs4 StopZones
+ */
+
+import edu.princeton.cs.algs4.StdOut;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+public class StopZones {
+
+    // Distance from a stoplight a stopped car can be started from
+    private static final double REACH = 2;
+
+    // Marks an empty slot in the cell table
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    // Stores the stoplights
+    private final Stoplight[] stoplights;
+
+    // Stores the zone cells as (y << 32 | x) in an open addressing table
+    private final long[] cells;
+
+    // Stores where each zone cell's lights start in lights
+    private final int[] first;
+
+    // Stores how many lights each zone cell has
+    private final int[] count;
+
+    // Stores the lights of every zone cell, grouped by cell
+    private final int[] lights;
+
+    // Stores the cars waiting on each stoplight
+    private final int[][] queue;
+
+    // Stores how many cars are waiting on each stoplight
+    private final int[] queueSize;
+
+    // Stores the stoplights that have cars waiting
+    private final int[] waiting;
+
+    // Stores the number of stoplights that have cars waiting
+    private int numWaiting;
+
+    // Constructor that works out the zone of every stoplight
+    public StopZones(Stoplight[] stoplights) {
+        this.stoplights = stoplights;
+        int n = stoplights.length;
+
+        int numPairs = 0;
+        for (int i = 0; i < n; i++)
+            numPairs += zoneSize(stoplights[i]);
+
+        int size = 4;
+        while (size < 2 * numPairs)
+            size *= 2;
+        cells = new long[size];
+        Arrays.fill(cells, EMPTY);
+        first = new int[size];
+        count = new int[size];
+        lights = new int[numPairs];
+
+        // Counts the lights of every cell, then hands each cell its own run of
+        // the lights array and fills it in
+        for (int i = 0; i < n; i++)
+            addZone(i, true);
+
+        int next = 0;
+        for (int slot = 0; slot < size; slot++) {
+            first[slot] = next;
+            next += count[slot];
+            count[slot] = 0;
+        }
+
+        for (int i = 0; i < n; i++)
+            addZone(i, false);
+
+        queue = new int[n][4];
+        queueSize = new int[n];
+        waiting = new int[n];
+    }
+
+    // Returns the number of cells in a stoplight's zone
+    private static int zoneSize(Stoplight sl) {
+        int lx = sl.getHorizPosition();
+        int ly = sl.getVertPosition();
+        int size = 0;
+        for (int cy = ly - 3; cy <= ly + 3; cy++) {
+            for (int cx = lx - 3; cx <= lx + 3; cx++) {
+                if (reaches(lx, ly, cx, cy))
+                    size++;
+            }
+        }
+        return size;
+    }
+
+    // Adds the cells of a stoplight's zone to the table, either only counting
+    // them or writing the light into each cell's run of lights
+    private void addZone(int light, boolean counting) {
+        int lx = stoplights[light].getHorizPosition();
+        int ly = stoplights[light].getVertPosition();
+        for (int cy = ly - 3; cy <= ly + 3; cy++) {
+            for (int cx = lx - 3; cx <= lx + 3; cx++) {
+                if (!reaches(lx, ly, cx, cy))
+                    continue;
+
+                long key = key(cy, cx);
+                int slot = slot(key);
+                while (cells[slot] != EMPTY && cells[slot] != key)
+                    slot = next(slot);
+                cells[slot] = key;
+
+                if (!counting)
+                    lights[first[slot] + count[slot]] = light;
+                count[slot]++;
+            }
+        }
+    }
+
+    // Checks if a car in the given cell could be closer than REACH to a light.
+    // A cell holds the points whose coordinates truncate to it, so cell 0
+    // covers (-1, 1) and a negative cell c covers (c - 1, c]
+    private static boolean reaches(int lx, int ly, int cx, int cy) {
+        double dx = gap(lx, cx);
+        double dy = gap(ly, cy);
+        return dx * dx + dy * dy < REACH * REACH;
+    }
+
+    // Returns the distance from a coordinate to the points truncating to cell c
+    private static double gap(int l, int c) {
+        double lo = c > 0 ? c : c - 1;
+        double hi = c < 0 ? c : c + 1;
+        if (l < lo)
+            return lo - l;
+        if (l > hi)
+            return l - hi;
+        return 0;
+    }
+
+    // Queues a car that has just stopped at the given x and y positions on
+    // every stoplight it is close enough to. Safe to call from many threads
+    public void register(int car, double x, double y) {
+        int slot = find(key((int) y, (int) x));
+        if (slot < 0)
+            return;
+
+        for (int i = first[slot]; i < first[slot] + count[slot]; i++) {
+            Stoplight sl = stoplights[lights[i]];
+            if (Car.distanceTo(x, y, sl.getHorizPosition(),
+                               sl.getVertPosition()) < REACH)
+                enqueue(lights[i], car);
+        }
+    }
+
+    // Adds a car to a stoplight's queue
+    private synchronized void enqueue(int light, int car) {
+        if (queueSize[light] == 0)
+            waiting[numWaiting++] = light;
+        if (queueSize[light] == queue[light].length)
+            queue[light] = Arrays.copyOf(queue[light], 2 * queueSize[light]);
+        queue[light][queueSize[light]++] = car;
+    }
+
+    // Empties the queue of every green stoplight, marking the cars in it that
+    // are still stopped close to the light to start again this tick
+    public void wake(Fleet cars, boolean[] wake) {
+        int kept = 0;
+        for (int w = 0; w < numWaiting; w++) {
+            int light = waiting[w];
+            Stoplight sl = stoplights[light];
+
+            if (sl.getPhase() != Stoplight.GREEN) {
+                waiting[kept++] = light;
+                continue;
+            }
+
+            for (int i = 0; i < queueSize[light]; i++) {
+                int car = queue[light][i];
+                if (cars.isStopped(car) && Car.distanceTo(
+                        cars.posX[car], cars.posY[car], sl.getHorizPosition(),
+                        sl.getVertPosition()) < REACH)
+                    wake[car] = true;
+            }
+            queueSize[light] = 0;
+        }
+        numWaiting = kept;
+    }
+
+    // Gives every queued car the new index it has in the given array after
+    // cars were taken out of the fleet, dropping the cars whose new index is
+    // -1 and the stoplights left with no cars waiting
+    public void renumber(int[] index) {
+        int kept = 0;
+        for (int w = 0; w < numWaiting; w++) {
+            int light = waiting[w];
+            int[] q = queue[light];
+            int size = 0;
+            for (int i = 0; i < queueSize[light]; i++) {
+                if (index[q[i]] >= 0)
+                    q[size++] = index[q[i]];
+            }
+            queueSize[light] = size;
+            if (size > 0)
+                waiting[kept++] = light;
+        }
+        numWaiting = kept;
+    }
+
+    // Returns the number of cars waiting on the given stoplight
+    public int queued(int light) {
+        return queueSize[light];
+    }
+
+    // Returns the table slot of the given cell (-1 if it is in no zone)
+    private int find(long key) {
+        int slot = slot(key);
+        while (cells[slot] != EMPTY) {
+            if (cells[slot] == key)
+                return slot;
+            slot = next(slot);
+        }
+        return -1;
+    }
+
+    // Packs a cell into one long
+    private static long key(int py, int px) {
+        return ((long) py << 32) | (px & 0xFFFFFFFFL);
+    }
+
+    // Returns the first table slot to look in for a key
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & (cells.length - 1);
+    }
+
+    // Returns the table slot after the given one
+    private int next(int slot) {
+        return (slot + 1) & (cells.length - 1);
+    }
+
+    // Tests the methods in the StopZones class
+    public static void main(String[] args) {
+        Stoplight[] lights = { new Stoplight(50, 49, 8000, 1500) };
+        StopZones zones = new StopZones(lights);
+        Fleet cars = new Fleet(3);
+        cars.add(50.2, 49.4, 0, 0, Color.BLUE);
+        cars.add(51.5, 49, 0, 0, Color.BLUE);
+        cars.add(53, 49, 0, 0, Color.BLUE);
+
+        for (int i = 0; i < cars.size(); i++)
+            zones.register(i, cars.posX[i], cars.posY[i]);
+        StdOut.println("queued: " + zones.queued(0) + " (expected 2)");
+
+        boolean[] wake = new boolean[cars.size()];
+        lights[0].setPhase(Stoplight.RED);
+        zones.wake(cars, wake);
+        StdOut.println("woken on red: " + wake[0] + " (expected false)");
+
+        lights[0].setPhase(Stoplight.GREEN);
+        zones.wake(cars, wake);
+        StdOut.println("woken on green: " + wake[0] + " " + wake[1] + " " + wake[2]
+                               + " (expected true true false)");
+        StdOut.println("queued: " + zones.queued(0) + " (expected 0)");
+
+        // Taking the first car out moves the last one into its place
+        for (int i = 0; i < cars.size(); i++)
+            zones.register(i, cars.posX[i], cars.posY[i]);
+        cars.remove(0);
+        zones.renumber(new int[] { -1, 1, 0 });
+        wake = new boolean[cars.size()];
+        lights[0].setPhase(Stoplight.RED);
+        zones.wake(cars, wake);
+        StdOut.println("queued after a car left: " + zones.queued(0) + " (expected 1)");
+        lights[0].setPhase(Stoplight.GREEN);
+        zones.wake(cars, wake);
+        StdOut.println("woken after a car left: " + wake[0] + " " + wake[1]
+                               + " (expected false true)");
+    }
+}
@@ -13,6 +13,17 @@ import java.awt.Color;
 
 public class Stoplight {
 
+    // Phases returned by updateLight
+    public static final int GREEN = 0;
+    public static final int YELLOW = 1;
+    public static final int RED = 2;
+
+    // Colors of the light in each phase, made once so changing the light
+    // never allocates
+    private static final Color GREEN_LIGHT = new Color(0, 255, 0);
+    private static final Color YELLOW_LIGHT = new Color(255, 191, 0);
+    private static final Color RED_LIGHT = new Color(255, 0, 0);
+
     // Stores the color of the light
     private Color light;
 
@@ -31,6 +42,9 @@ public class Stoplight {
     // Stores the time the light is yellow
     private double timeYellow;
 
+    // Stores the phase the light is in (-1 until it is first set)
+    private int phase = -1;
+
     // Constructor to build stoplight, takes the light's position and
     // time it is red and green
     public Stoplight(int px, int py, double timeRed, double timeGreen) {
@@ -39,7 +53,7 @@ public class Stoplight {
         this.timeRed = timeRed;
         this.timeGreen = timeGreen;
         timeYellow = 1000;
-        light = new Color(0, 255, 0);
+        light = GREEN_LIGHT;
     }
 
     // Draws the stoplight
@@ -51,17 +65,64 @@ public class Stoplight {
 
     // Changes the light color to red
     public void changeLightRed() {
-        light = new Color(255, 0, 0);
+        light = RED_LIGHT;
     }
 
     // Changes the light color to green
     public void changeLightGreen() {
-        light = new Color(0, 255, 0);
+        light = GREEN_LIGHT;
     }
 
     // Changes the light color to yellow
     public void changeLightYellow() {
-        light = new Color(255, 191, 0);
+        light = YELLOW_LIGHT;
+    }
+
+    // Changes the light to the color it should be at the given time (in
+    // milliseconds) and returns the phase it is in
+    public int updateLight(double time) {
+        setPhase(phaseAt(time));
+        return phase;
+    }
+
+    // Returns the phase the light should be in at the given time (in
+    // milliseconds) without changing it
+    public int phaseAt(double time) {
+        double cycle = time % getCycleTime();
+
+        if (cycle < timeGreen)
+            return GREEN;
+        else if (cycle < (timeGreen + timeYellow))
+            return YELLOW;
+        else
+            return RED;
+    }
+
+    // Changes the light to the given phase and its color
+    public void setPhase(int phase) {
+        this.phase = phase;
+
+        if (phase == GREEN)
+            changeLightGreen();
+        else if (phase == YELLOW)
+            changeLightYellow();
+        else
+            changeLightRed();
+    }
+
+    // Gets the phase the light is in
+    public int getPhase() {
+        return phase;
+    }
+
+    // Gets how long one cycle of the light's phases takes
+    public double getCycleTime() {
+        return timeYellow + timeRed + timeRed;
+    }
+
+    // Gets the color the light is showing
+    public Color getColor() {
+        return light;
     }
 
     // Gets how long the light is red
@@ -97,23 +158,14 @@ public class Stoplight {
         StdDraw.setXscale(0, 10);
         StdDraw.setYscale(0, 10);
         Stoplight s = new Stoplight(3, 5, 5000, 2000);
+        SignalScheduler signals = new SignalScheduler(new Stoplight[] { s }, null);
+        double time = 0;
 
         while (true) {
+            time += Simulation.TICK_MILLIS;
+            signals.advanceTo(time);
             s.drawStoplight();
-
-            double time = System.currentTimeMillis();
-
-            if ((time % (s.getTimeYellow() + s.getTimeRed() +
-                    s.getTimeRed())) < s.getTimeGreen()) {
-                s.changeLightGreen();
-            }
-            else if ((time % (s.getTimeYellow() + s.getTimeRed() +
-                    s.getTimeRed())) < (s.getTimeGreen() + s.getTimeYellow())) {
-                s.changeLightYellow();
-            }
-            else {
-                s.changeLightRed();
-            }
+            StdDraw.pause(Simulation.TICK_MILLIS);
         }
     }
 }
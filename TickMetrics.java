@@ -0,0 +1,284 @@
+/* TickMetrics.java
+ *
+ *  This class times each phase of a simulation step so a slow frame can be
+ *  traced to what made it slow: handling the keyboard, drawing the frame,
+ *  changing the stoplights, moving the cars or showing the frame, and how
+ *  long each key waited from being typed to reaching the user car. Every
+ *  phase is kept in a latency histogram with four buckets per power of two,
+ *  so a percentile is off by at most a quarter, and every phase is also
+ *  committed as a JFR event, which costs nothing unless a flight recording
+ *  is running (e.g. java -XX:StartFlightRecording:filename=run.jfr). Once a
+ *  simulated second the ticks per second and the number of moving and
+ *  stopped cars are sampled and committed as an event of their own. The
+ *  totals are written to a text file once a minute of real time and
+ *  whenever dump is called. A simulation with no metrics attached does no
+ *  timing.
+ *
+ *  Compilation: javac-algs4 TickMetrics.java
+ *  Run: java-algs4 TickMetrics 5000 metrics.txt < ./Environment-Files/Environment1.txt
+ */
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.Scanner;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+public class TickMetrics {
+
+    // Phases of a step
+    public static final int INPUT = 0;
+    public static final int DRAW = 1;
+    public static final int SIGNALS = 2;
+    public static final int CARS = 3;
+    public static final int SHOW = 4;
+
+    // Time from a key being typed to it being applied, kept as a phase
+    public static final int KEY_LAG = 5;
+
+    // Names of the phases as they are reported
+    private static final String[] PHASES = {
+            "input", "draw", "signals", "cars", "show", "key lag"
+    };
+
+    // Number of ticks between samples of the fleet (one simulated second)
+    public static final int SAMPLE_TICKS = 1000 / Simulation.TICK_MILLIS;
+
+    // Nanoseconds of real time between dumps to the file, so a headless run
+    // at full speed does not spend its time writing the file
+    public static final long DUMP_NANOS = 60_000_000_000L;
+
+    // Number of histogram buckets, four for each power of two
+    private static final int BUCKETS = 256;
+
+    // Is committed for every phase of every step
+    @Name("drivingsim.Phase")
+    @Label("Simulation Phase")
+    @Category("Driving Simulator")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Tick")
+        long tick;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    // Is committed once a simulated second
+    @Name("drivingsim.Sample")
+    @Label("Simulation Sample")
+    @Category("Driving Simulator")
+    static class SampleEvent extends Event {
+        @Label("Tick")
+        long tick;
+
+        @Label("Ticks per Second")
+        double ticksPerSecond;
+
+        @Label("Moving Cars")
+        int movingCars;
+
+        @Label("Stopped Cars")
+        int stoppedCars;
+    }
+
+    // Stores the file the totals are written to (null to only keep them)
+    private final String filename;
+
+    // Stores how many times each phase fell in each bucket
+    private final long[][] counts = new long[PHASES.length][BUCKETS];
+
+    // Stores how many times each phase ran, its total and its longest time
+    private final long[] runs = new long[PHASES.length];
+    private final long[] totalNanos = new long[PHASES.length];
+    private final long[] maxNanos = new long[PHASES.length];
+
+    // Stores the number of ticks counted
+    private long ticks;
+
+    // Stores the wall clock and tick count of the last sample
+    private long sampleNanos = System.nanoTime();
+    private long sampleTicks;
+
+    // Stores the wall clock of the last dump to the file
+    private long dumpNanos = System.nanoTime();
+
+    // Stores what the last sample found
+    private double ticksPerSecond;
+    private int movingCars;
+    private int stoppedCars;
+
+    // Constructor that keeps the metrics and writes them to the given file
+    // (null to never write them)
+    public TickMetrics(String filename) {
+        this.filename = filename;
+    }
+
+    // Returns the wall clock in nanoseconds to time a phase from
+    public long start() {
+        return System.nanoTime();
+    }
+
+    // Counts the given phase of the given tick as having run from the given
+    // start until now, and returns now to time the next phase from
+    public long lap(int phase, long tick, long start) {
+        long now = System.nanoTime();
+        record(phase, tick, now - start);
+        return now;
+    }
+
+    // Counts the given phase of the given tick as having taken the given
+    // number of nanoseconds
+    public void record(int phase, long tick, long nanos) {
+        counts[phase][bucket(nanos)]++;
+        runs[phase]++;
+        totalNanos[phase] += nanos;
+        maxNanos[phase] = Math.max(maxNanos[phase], nanos);
+
+        PhaseEvent event = new PhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = PHASES[phase];
+            event.tick = tick;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+
+    // Counts a tick that has finished, sampling the given fleet once a
+    // simulated second and writing the file every DUMP_NANOS
+    public void ticked(Fleet cars) {
+        ticks++;
+        if (ticks % SAMPLE_TICKS != 0)
+            return;
+        sample(cars);
+        if (sampleNanos - dumpNanos >= DUMP_NANOS) {
+            dumpNanos = sampleNanos;
+            dump();
+        }
+    }
+
+    // Works out the ticks per second since the last sample and counts the
+    // moving and stopped cars
+    private void sample(Fleet cars) {
+        long now = System.nanoTime();
+        ticksPerSecond = (ticks - sampleTicks) / ((now - sampleNanos) / 1e9);
+        sampleNanos = now;
+        sampleTicks = ticks;
+
+        stoppedCars = 0;
+        for (int i = 0; i < cars.size(); i++) {
+            if (cars.isStopped(i))
+                stoppedCars++;
+        }
+        movingCars = cars.size() - stoppedCars;
+
+        SampleEvent event = new SampleEvent();
+        if (event.isEnabled()) {
+            event.tick = ticks;
+            event.ticksPerSecond = ticksPerSecond;
+            event.movingCars = movingCars;
+            event.stoppedCars = stoppedCars;
+            event.commit();
+        }
+    }
+
+    // Returns the bucket a time in nanoseconds falls in
+    private static int bucket(long nanos) {
+        if (nanos < 4)
+            return (int) Math.max(nanos, 0);
+        int e = 63 - Long.numberOfLeadingZeros(nanos);
+        return 4 * (e - 1) + (int) ((nanos >>> (e - 2)) & 3);
+    }
+
+    // Returns the longest time in nanoseconds that falls in a bucket
+    private static long upperBound(int b) {
+        if (b < 4)
+            return b;
+        int e = b / 4 + 1;
+        return ((5L + b % 4) << (e - 2)) - 1;
+    }
+
+    // Returns the time in nanoseconds that the given fraction of the runs of
+    // a phase took at most (to within a quarter)
+    public long percentile(int phase, double p) {
+        long rank = (long) Math.ceil(p * runs[phase]);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[phase][b];
+            if (seen >= rank && seen > 0)
+                return Math.min(upperBound(b), maxNanos[phase]);
+        }
+        return 0;
+    }
+
+    // Returns the number of ticks counted
+    public long getTicks() {
+        return ticks;
+    }
+
+    // Writes a table of every phase and the last sample of the fleet
+    public void report(PrintWriter out) {
+        out.printf("ticks: %d, ticks/s: %.1f, moving cars: %d, stopped cars: %d%n",
+                   ticks, ticksPerSecond, movingCars, stoppedCars);
+        out.printf("%-8s %10s %10s %10s %10s %10s %10s%n",
+                   "phase", "runs", "mean us", "p50 us", "p90 us", "p99 us", "max us");
+        for (int p = 0; p < PHASES.length; p++) {
+            double mean = runs[p] == 0 ? 0 : (double) totalNanos[p] / runs[p];
+            out.printf("%-8s %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                       PHASES[p], runs[p], mean / 1e3, percentile(p, .5) / 1e3,
+                       percentile(p, .9) / 1e3, percentile(p, .99) / 1e3,
+                       maxNanos[p] / 1e3);
+        }
+    }
+
+    // Writes the table to the file, replacing what was there
+    public void dump() {
+        if (filename == null)
+            return;
+        try (PrintWriter out = new PrintWriter(new FileWriter(filename))) {
+            report(out);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Runs an environment from standard input headlessly for the number of
+    // ticks given as the first argument, without metrics and then with them,
+    // and writes the metrics to the file given as the second argument
+    public static void main(String[] args) {
+        long numTicks = Long.parseLong(args[0]);
+        String text = new In().readAll();
+
+        Simulation plain = Simulation.read(new In(new Scanner(text)));
+        long start = System.nanoTime();
+        plain.run(numTicks);
+        double plainSeconds = (System.nanoTime() - start) / 1e9;
+
+        Simulation timed = Simulation.read(new In(new Scanner(text)));
+        TickMetrics metrics = new TickMetrics(args[1]);
+        timed.setMetrics(metrics);
+        start = System.nanoTime();
+        timed.run(numTicks);
+        double timedSeconds = (System.nanoTime() - start) / 1e9;
+        metrics.dump();
+
+        PrintWriter out = new PrintWriter(System.out, true);
+        metrics.report(out);
+        StdOut.printf("without metrics: %.3f s, with metrics: %.3f s%n",
+                      plainSeconds, timedSeconds);
+        StdOut.println("same world: " + (plain.checksum() == timed.checksum())
+                               + " (expected true)");
+    }
+}
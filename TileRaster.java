@@ -0,0 +1,313 @@
+/* TileRaster.java
+ *
+ *  This class draws filled rectangles straight into the pixels of an image,
+ *  with no Java2D calls in between. A frame is a list of rectangles, each
+ *  with a color, added in the order they should be painted. When the frame
+ *  is done, every rectangle is put in the bins of the square tiles of the
+ *  image it touches. The tiles are then painted in parallel: a thread takes
+ *  the next tile, copies its rows from a background, and paints the
+ *  rectangles in its bin over them, clipped to the tile. The tiles never
+ *  overlap, so the threads never write the same pixel, and each tile paints
+ *  its rectangles in the order they were added, so the result is the same
+ *  as painting them one after another. A tile that had nothing on it last
+ *  frame and has nothing on it now already shows the background, so it is
+ *  skipped. The threads wait for frames without locks, and nothing is
+ *  allocated once the bins are as large as a frame needs. Closing the
+ *  raster stops its threads.
+ *
+ *  Compilation: javac-algs4 TileRaster.java
+ *  Run: java-algs4 TileRaster 4 (paints random frames on 4 threads and
+ *  checks them against painting one rectangle at a time)
+ */
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class TileRaster implements AutoCloseable {
+
+    // Side of a tile in pixels
+    public static final int TILE = 64;
+
+    // Stores the width and height of the image in pixels
+    private final int width;
+    private final int height;
+
+    // Stores the number of tiles across and down the image, and in all
+    private final int tilesX;
+    private final int tilesY;
+    private final int numTiles;
+
+    // Stores the pixels painted on and the pixels under everything, row by row
+    private final int[] pixels;
+    private final int[] background;
+
+    // Stores the rectangles of the frame as x, y, width, height, and their
+    // colors as RGB
+    private int[] rects = new int[256];
+    private int[] colors = new int[64];
+
+    // Stores the number of rectangles in the frame
+    private int numRects;
+
+    // Stores the rectangles that touch each tile, in the order they were added
+    private final int[][] bins;
+    private final int[] binSizes;
+
+    // Stores whether each tile had anything painted on it last frame
+    private final boolean[] painted;
+
+    // Stores whether every tile has to be painted (after the background changed)
+    private boolean stale = true;
+
+    // Stores the threads that help paint tiles, besides the one calling paint
+    private final Thread[] helpers;
+
+    // Stores the next tile to take and the number of tiles not yet painted
+    private final AtomicInteger nextTile = new AtomicInteger();
+    private final AtomicInteger remaining = new AtomicInteger();
+
+    // Stores the number of frames started, which the helpers wait to go up
+    private volatile int generation;
+
+    // Stores whether the raster was closed, which stops the helpers
+    private volatile boolean closed;
+
+    // Constructor that paints the given pixels of an image of the given width
+    // and height over the given background pixels, with the given number of
+    // threads (counting the one that calls paint)
+    public TileRaster(int[] pixels, int[] background, int width, int height,
+                      int threads) {
+        if (pixels.length != width * height || background.length != pixels.length)
+            throw new IllegalArgumentException("pixels must be width * height");
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1");
+        this.pixels = pixels;
+        this.background = background;
+        this.width = width;
+        this.height = height;
+
+        tilesX = (width + TILE - 1) / TILE;
+        tilesY = (height + TILE - 1) / TILE;
+        numTiles = tilesX * tilesY;
+        bins = new int[numTiles][16];
+        binSizes = new int[numTiles];
+        painted = new boolean[numTiles];
+
+        helpers = new Thread[threads - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new Thread(this::help, "raster-" + (i + 1));
+            helpers[i].setDaemon(true);
+            helpers[i].start();
+        }
+    }
+
+    // Returns the number of threads that paint, counting the one that calls paint
+    public int threads() {
+        return helpers.length + 1;
+    }
+
+    // Makes the next paint copy every tile from the background, after the
+    // background was drawn again
+    public void invalidate() {
+        stale = true;
+    }
+
+    // Adds a rectangle of the given RGB color at the given pixel x and y of
+    // its top left corner, with the given width and height, to the frame
+    public void add(int x, int y, int w, int h, int rgb) {
+        if (w <= 0 || h <= 0)
+            return;
+        if (4 * numRects + 4 > rects.length) {
+            rects = Arrays.copyOf(rects, 2 * rects.length);
+            colors = Arrays.copyOf(colors, 2 * colors.length);
+        }
+        rects[4 * numRects] = x;
+        rects[4 * numRects + 1] = y;
+        rects[4 * numRects + 2] = w;
+        rects[4 * numRects + 3] = h;
+        colors[numRects++] = rgb;
+    }
+
+    // Paints the frame over the background on all the threads, returning once
+    // every tile is done, and empties the frame
+    public void paint() {
+        if (closed)
+            throw new IllegalStateException("raster is closed");
+        for (int r = 0; r < numRects; r++)
+            bin(r);
+
+        remaining.set(numTiles);
+        nextTile.set(0);
+        generation++;
+        for (int i = 0; i < helpers.length; i++)
+            LockSupport.unpark(helpers[i]);
+
+        paintTiles();
+        while (remaining.get() > 0)
+            Thread.yield();
+
+        numRects = 0;
+        stale = false;
+    }
+
+    // Puts the rectangle with the given index in the bin of every tile it
+    // touches
+    private void bin(int r) {
+        int x0 = Math.max(rects[4 * r], 0);
+        int y0 = Math.max(rects[4 * r + 1], 0);
+        int x1 = Math.min(rects[4 * r] + rects[4 * r + 2], width) - 1;
+        int y1 = Math.min(rects[4 * r + 1] + rects[4 * r + 3], height) - 1;
+        if (x1 < x0 || y1 < y0)
+            return;
+
+        for (int ty = y0 / TILE; ty <= y1 / TILE; ty++) {
+            for (int tx = x0 / TILE; tx <= x1 / TILE; tx++) {
+                int t = ty * tilesX + tx;
+                if (binSizes[t] == bins[t].length)
+                    bins[t] = Arrays.copyOf(bins[t], 2 * bins[t].length);
+                bins[t][binSizes[t]++] = r;
+            }
+        }
+    }
+
+    // Waits for frames and helps paint their tiles until the raster is
+    // closed (run by each helper thread)
+    private void help() {
+        int seen = 0;
+        while (true) {
+            while (generation == seen && !closed)
+                LockSupport.park(this);
+            if (closed)
+                return;
+            seen = generation;
+            paintTiles();
+        }
+    }
+
+    // Stops the helper threads and waits for them to end. The raster cannot
+    // paint after it is closed
+    public void close() {
+        closed = true;
+        for (int i = 0; i < helpers.length; i++)
+            LockSupport.unpark(helpers[i]);
+        for (int i = 0; i < helpers.length; i++) {
+            try {
+                helpers[i].join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Takes tiles and paints them until there are none left
+    private void paintTiles() {
+        int t;
+        while ((t = nextTile.getAndIncrement()) < numTiles) {
+            paintTile(t);
+            remaining.decrementAndGet();
+        }
+    }
+
+    // Copies the tile with the given index from the background and paints the
+    // rectangles in its bin over it, unless it shows the background already
+    private void paintTile(int t) {
+        int n = binSizes[t];
+        if (n == 0 && !painted[t] && !stale)
+            return;
+
+        int tx0 = (t % tilesX) * TILE;
+        int ty0 = (t / tilesX) * TILE;
+        int tx1 = Math.min(tx0 + TILE, width);
+        int ty1 = Math.min(ty0 + TILE, height);
+        for (int y = ty0; y < ty1; y++) {
+            int row = y * width + tx0;
+            System.arraycopy(background, row, pixels, row, tx1 - tx0);
+        }
+
+        int[] bin = bins[t];
+        for (int i = 0; i < n; i++) {
+            int r = bin[i];
+            int x0 = Math.max(rects[4 * r], tx0);
+            int y0 = Math.max(rects[4 * r + 1], ty0);
+            int x1 = Math.min(rects[4 * r] + rects[4 * r + 2], tx1);
+            int y1 = Math.min(rects[4 * r + 1] + rects[4 * r + 3], ty1);
+            int rgb = colors[r];
+            for (int y = y0; y < y1; y++)
+                Arrays.fill(pixels, y * width + x0, y * width + x1, rgb);
+        }
+
+        painted[t] = n > 0;
+        binSizes[t] = 0;
+    }
+
+    // Fills a rectangle of the given RGB color at the given pixel x and y of
+    // its top left corner, with the given width and height, in the given
+    // pixels of an image of the given width, clipped to the image
+    public static void fill(int[] pixels, int width, int x, int y, int w, int h,
+                            int rgb) {
+        int height = pixels.length / width;
+        int x0 = Math.max(x, 0);
+        int y0 = Math.max(y, 0);
+        int x1 = Math.min(x + w, width);
+        int y1 = Math.min(y + h, height);
+        if (x1 <= x0)
+            return;
+        for (int row = y0; row < y1; row++)
+            Arrays.fill(pixels, row * width + x0, row * width + x1, rgb);
+    }
+
+    // Tests the methods in the TileRaster class by painting random frames on
+    // the number of threads given as the first argument (the number of cores
+    // if there is none) and checking them against painting one at a time
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                                      : Runtime.getRuntime().availableProcessors();
+        int width = 500;
+        int height = 300;
+        int[] background = new int[width * height];
+        for (int i = 0; i < background.length; i++)
+            background[i] = i * 31;
+        int[] pixels = new int[width * height];
+        int[] expected = new int[width * height];
+        TileRaster raster = new TileRaster(pixels, background, width, height, threads);
+        StdOut.println("threads: " + raster.threads() + " (expected " + threads + ")");
+
+        int numFrames = 500;
+        boolean same = true;
+        long start = System.nanoTime();
+        for (int frame = 0; frame < numFrames; frame++) {
+            System.arraycopy(background, 0, expected, 0, background.length);
+            int numRects = StdRandom.uniformInt(frame % 10 == 0 ? 1 : 2000);
+            for (int i = 0; i < numRects; i++) {
+                int x = StdRandom.uniformInt(-20, width + 20);
+                int y = StdRandom.uniformInt(-20, height + 20);
+                int w = StdRandom.uniformInt(1, frame % 50 == 0 ? 300 : 8);
+                int h = StdRandom.uniformInt(1, 8);
+                int rgb = StdRandom.uniformInt(1 << 24);
+                raster.add(x, y, w, h, rgb);
+                fill(expected, width, x, y, w, h, rgb);
+            }
+            raster.paint();
+            same &= Arrays.equals(pixels, expected);
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / numFrames;
+
+        StdOut.println("same pixels as painting one at a time: " + same
+                               + " (expected true)");
+        StdOut.printf("%.3f ms per frame (with the check)%n", ms);
+
+        raster.close();
+        int running = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().startsWith("raster-"))
+                running++;
+        }
+        StdOut.println("threads left after close: " + running + " (expected 0)");
+    }
+}
@@ -0,0 +1,239 @@
+/* TurnTable.java
+ *
+ *  This class works out once, for every road cell and each of the four
+ *  headings, what Fleet.makeTurn would do to a car on that cell: keep
+ *  going, turn left, turn right or halt at a dead end. It also marks the
+ *  cells blocked by a red light, which are patched one light at a time as
+ *  the lights change. Each road cell has one byte for cars driving across
+ *  it (found through its row segment of the lane graph) and one for cars
+ *  driving up or down it (found through its column segment), so a car on a
+ *  known segment reads a single byte instead of probing the grid.
+ *
+ *  Compilation: javac-algs4 TurnTable.java
+ *  Run: java-algs4 TurnTable < ./Environment-Files/Environment1.txt
+ */
+
+import edu.princeton.cs.algs4.In;
+import edu.princeton.cs.algs4.StdOut;
+
+import java.awt.Color;
+
+public class TurnTable {
+
+    // What a car does on a cell
+    public static final int CONTINUE = 0;
+    public static final int LEFT = 1;
+    public static final int RIGHT = 2;
+    public static final int HALT = 3;
+
+    // Headings a car can drive in (east and west use row segments, north
+    // and south use column segments)
+    public static final int EAST = 0;
+    public static final int WEST = 1;
+    public static final int NORTH = 2;
+    public static final int SOUTH = 3;
+
+    // Bit of a cell's byte that is set while a red light blocks the cell
+    private static final int RED = 1 << 4;
+
+    // Sets the road width (matched in all input files)
+    private static final int ROAD_WIDTH = 2;
+
+    // Stores the lane segments the cells are found through
+    private final LaneGraph lanes;
+
+    // Stores where each segment's cells start in the table
+    private final int[] base;
+
+    // Stores two bits of what to do for each heading along the cell's
+    // segment (the lower pair for east or north) and the red bit
+    private final byte[] cells;
+
+    // Constructor that works out what to do on every cell of the given grid
+    public TurnTable(RoadGrid grid, LaneGraph lanes) {
+        this.lanes = lanes;
+
+        int n = lanes.numSegments();
+        base = new int[n];
+        long total = 0;
+        for (int s = 0; s < n; s++) {
+            base[s] = (int) total;
+            total += lanes.last(s) - lanes.first(s) + 1;
+            if (total > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("too many road cells");
+        }
+        cells = new byte[(int) total];
+
+        for (int s = 0; s < n; s++) {
+            int at = lanes.lane(s);
+            for (int c = lanes.first(s); c <= lanes.last(s); c++) {
+                int py = lanes.isRow(s) ? at : c;
+                int px = lanes.isRow(s) ? c : at;
+                int first = lanes.isRow(s) ? EAST : NORTH;
+                int both = decide(grid, py, px, first)
+                        | decide(grid, py, px, first + 1) << 2;
+                cells[base[s] + c - lanes.first(s)] = (byte) both;
+            }
+        }
+    }
+
+    // Constructor that copies the given table with no cells red, sharing its
+    // lane segments, which never change
+    public TurnTable(TurnTable table) {
+        lanes = table.lanes;
+        base = table.base;
+        cells = table.cells.clone();
+        for (int i = 0; i < cells.length; i++)
+            cells[i] &= ~RED;
+    }
+
+    // Returns what Fleet.makeTurn does to a car with the given heading on the
+    // given road cell
+    private static int decide(RoadGrid grid, int py, int px, int heading) {
+        int w = ROAD_WIDTH;
+        boolean ahead;
+        boolean left;
+        boolean right;
+        if (heading == EAST) {
+            ahead = grid.get(py, px + w);
+            left = grid.get(py + w, px);
+            right = !left && grid.get(py - w, px);
+        }
+        else if (heading == WEST) {
+            ahead = grid.get(py, px - w);
+            right = grid.get(py + w, px);
+            left = !right && grid.get(py - w, px);
+        }
+        else if (heading == NORTH) {
+            ahead = grid.get(py + w, px);
+            left = grid.get(py, px - w);
+            right = !left && grid.get(py, px + w);
+        }
+        else {
+            ahead = grid.get(py - w, px);
+            left = grid.get(py, px + w);
+            right = !left && grid.get(py, px - w);
+        }
+
+        if (ahead)
+            return CONTINUE;
+        if (left)
+            return LEFT;
+        return right ? RIGHT : HALT;
+    }
+
+    // Returns the lane segments the cells are found through
+    public LaneGraph lanes() {
+        return lanes;
+    }
+
+    // Returns the table index of the given cell along segment s
+    public int cell(int s, int along) {
+        return base[s] + along - lanes.first(s);
+    }
+
+    // Returns what a car with the given heading does on the cell at the given
+    // table index, which must be on a segment along that heading
+    public int turn(int cell, int heading) {
+        return (cells[cell] >> ((heading & 1) << 1)) & 3;
+    }
+
+    // Checks if the cell at the given table index is blocked by a red light
+    public boolean isRed(int cell) {
+        return (cells[cell] & RED) != 0;
+    }
+
+    // Marks whether the cell at the given x and y positions is blocked by a
+    // red light (cells that are not road are ignored)
+    public void setRed(int py, int px, boolean red) {
+        int r = lanes.rowSegment(py, px);
+        if (r >= 0)
+            setRed(cell(r, px), red);
+        int c = lanes.columnSegment(px, py);
+        if (c >= 0)
+            setRed(cell(c, py), red);
+    }
+
+    // Sets or clears the red bit of the cell at the given table index
+    private void setRed(int cell, boolean red) {
+        if (red)
+            cells[cell] |= RED;
+        else
+            cells[cell] &= ~RED;
+    }
+
+    // Returns the number of bytes the table takes up
+    public long bytes() {
+        return cells.length + (long) base.length * Integer.BYTES;
+    }
+
+    // Counts the road cells and headings of the given grid where the table
+    // turns a car differently from probing the grid, returning the number
+    // checked and the number that differ
+    private static int[] compare(RoadGrid grid, TurnTable table) {
+        Fleet probed = new Fleet(1);
+        probed.setRoad(grid);
+        probed.add(0, 0, 0, 0, Color.BLUE);
+        Fleet looked = new Fleet(1);
+        looked.setRoad(grid);
+        looked.setTurnTable(table);
+        looked.add(0, 0, 0, 0, Color.BLUE);
+        double[][] velocities = { { .2, 0 }, { -.2, 0 }, { 0, .2 }, { 0, -.2 } };
+
+        int mismatches = 0;
+        int checked = 0;
+        for (int py = 0; py < grid.getHeight(); py++) {
+            for (int px = 0; px < grid.getWidth(); px++) {
+                if (!grid.get(py, px))
+                    continue;
+                for (double[] v : velocities) {
+                    for (Fleet f : new Fleet[] { probed, looked }) {
+                        f.posX[0] = px + .5;
+                        f.posY[0] = py + .5;
+                        f.vx[0] = v[0];
+                        f.vy[0] = v[1];
+                        f.makeTurn(0);
+                    }
+                    if (probed.vx[0] != looked.vx[0] || probed.vy[0] != looked.vy[0])
+                        mismatches++;
+                    checked++;
+                }
+            }
+        }
+        return new int[] { checked, mismatches };
+    }
+
+    // Tests the methods in the TurnTable class by turning a car on every road
+    // cell in every heading of an environment read from standard input, and
+    // of roads along the edge of the map, once with the table and once
+    // probing the grid
+    public static void main(String[] args) {
+        Simulation sim = Simulation.read(new In());
+        RoadGrid grid = sim.getGrid();
+        TurnTable table = new TurnTable(grid, new LaneGraph(grid));
+        int[] compared = compare(grid, table);
+
+        // Roads along the bottom edge of the map, where the grid probes
+        // truncate toward zero
+        int[][] edgeRoads = { { 25, 25, 1, 25 }, { 10, 0, 15, 1 } };
+        RoadGrid edge = RoadGrid.of(edgeRoads);
+        int[] edgeCompared = compare(edge, new TurnTable(edge, new LaneGraph(edge)));
+
+        Stoplight sl = sim.getStoplights()[0];
+        int py = sl.getVertPosition();
+        int px = sl.getHorizPosition();
+        table.setRed(py, px, true);
+        boolean red = table.isRed(table.cell(table.lanes().rowSegment(py, px), px));
+        table.setRed(py, px, false);
+        boolean cleared = !table.isRed(
+                table.cell(table.lanes().columnSegment(px, py), py));
+
+        StdOut.println("cells and headings checked: " + compared[0]);
+        StdOut.println("mismatches: " + compared[1] + " (expected 0)");
+        StdOut.println("mismatches at the edge of the map: " + edgeCompared[1]
+                               + " of " + edgeCompared[0] + " (expected 0)");
+        StdOut.println("red patched and cleared: " + (red && cleared)
+                               + " (expected true)");
+        StdOut.println("table bytes: " + table.bytes());
+    }
+}
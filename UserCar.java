@@ -69,11 +69,25 @@ public class UserCar extends Car {
         }
     }
 
-    // Checks the keyboard input to see how the user car should move
+    // Checks the keyboard input to see how the user car should move,
+    // applying every key typed since the last check
     // Takes a keyboard and user car objects as arguments
     public void checkInput(Keyboard k) {
-        char c = k.nextKeyPressed();
+        while (k.wasNextKeyPressed()) {
+            apply(k.nextKeyPressed());
+        }
+    }
+
+    // Moves the user car the way the first n of the given keys tell it to,
+    // in order
+    public void applyAll(char[] keys, int n) {
+        for (int i = 0; i < n; i++) {
+            apply(keys[i]);
+        }
+    }
 
+    // Moves the user car the way the given key tells it to
+    public void apply(char c) {
         if (c == 'r') {
             turnRight();
         }
@@ -138,6 +152,8 @@ public class UserCar extends Car {
         UserCar a = new UserCar(25, 2, 0, 0.1,
                                 new Color(0, 0, 255));
         Stoplight b = new Stoplight(50, 49, 6000, 2000);
+        SignalScheduler signals = new SignalScheduler(new Stoplight[] { b }, null);
+        double time = 0;
         Keyboard k = new Keyboard();
 
         while (true) {
@@ -154,19 +170,14 @@ public class UserCar extends Car {
             StdDraw.show(20);
             StdDraw.clear();
 
-            double time = System.currentTimeMillis();
+            time += Simulation.TICK_MILLIS;
+            signals.advanceTo(time);
 
-            if ((time % (b.getTimeYellow() + b.getTimeRed() + b.getTimeRed()))
-                    < b.getTimeGreen()) {
-                b.changeLightGreen();
+            if (b.getPhase() == Stoplight.GREEN) {
+                clearRedlight(b);
                 a.accelerate(b);
             }
-            else if ((time % (b.getTimeYellow() + b.getTimeRed() + b.getTimeRed()))
-                    < (b.getTimeGreen() + b.getTimeYellow())) {
-                b.changeLightYellow();
-            }
-            else {
-                b.changeLightRed();
+            else if (b.getPhase() == Stoplight.RED) {
                 hitRedlight(b);
             }
         }
@@ -0,0 +1,61 @@
+/* JmhWorkload.java
+ *
+ *  This class hands the passes of Benchmarks to the JMH benchmarks in the
+ *  benchmarks package, which cannot name classes in the default package.
+ *
+ *  Compilation: gradle jmhClasses
+ *  Run: loaded by benchmarks.Workload.create
+ */
+
+import benchmarks.Workload;
+
+public class JmhWorkload implements Workload {
+
+    // Stores the city and fleet the passes run on
+    private Benchmarks city;
+
+    // Generates the city with the given number of cars and about the given side
+    public void setUp(int numAC, int mapSize) {
+        city = new Benchmarks(numAC, mapSize);
+    }
+
+    // Puts the fleet back the way it started
+    public void reset() {
+        city.reset();
+    }
+
+    // Puts the whole simulation back the way it started
+    public void restart() {
+        city.restart();
+    }
+
+    // Moves every car one tick
+    public double updatePosition() {
+        return city.updatePosition();
+    }
+
+    // Turns every car that has reached the end of its road
+    public double makeTurn() {
+        return city.makeTurn();
+    }
+
+    // Lays every road out in a new grid the size of the map
+    public double buildRoad() {
+        return city.buildRoad();
+    }
+
+    // Adds up the distance from every car to the first stoplight
+    public double distanceTo() {
+        return city.distanceTo();
+    }
+
+    // Works out the phase of every stoplight
+    public double phaseAt() {
+        return city.phaseAt();
+    }
+
+    // Runs one whole tick of the simulation without drawing
+    public double tick() {
+        return city.tick();
+    }
+}
@@ -0,0 +1,80 @@
+/* PassBenchmarks.java
+ *
+ *  This class times the passes of the simulator that do not change the
+ *  fleet or whose cost does not depend on where the cars are, under JMH:
+ *  moving every car, laying out the roads, the distance from every car to a
+ *  stoplight and the phase of every stoplight. Each is run on a generated
+ *  grid city for every fleet size and map size, and reported as the time of
+ *  one pass over the whole fleet (or the roads or the stoplights).
+ *
+ *  Compilation: gradle jmhClasses
+ *  Run: gradle jmh -Pjmh="PassBenchmarks -p fleet=1000,100000 -p map=100,1000"
+ */
+
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PassBenchmarks {
+
+    // Number of cars in the city
+    @Param({ "1000", "100000" })
+    public int fleet;
+
+    // Side of the city in squares
+    @Param({ "100", "1000" })
+    public int map;
+
+    // Stores the city the passes run on
+    private Workload city;
+
+    // Generates the city once for each fleet size and map size
+    @Setup(Level.Trial)
+    public void setUp() {
+        city = Workload.create(fleet, map);
+    }
+
+    // Moves every car one tick (the cars drift further each call, which
+    // costs the same wherever they are)
+    @Benchmark
+    public double updatePosition() {
+        return city.updatePosition();
+    }
+
+    // Lays every road out in a new grid the size of the map
+    @Benchmark
+    public double buildRoad() {
+        return city.buildRoad();
+    }
+
+    // Adds up the distance from every car to the first stoplight
+    @Benchmark
+    public double distanceTo() {
+        return city.distanceTo();
+    }
+
+    // Works out the phase of every stoplight
+    @Benchmark
+    public double phaseAt() {
+        return city.phaseAt();
+    }
+}
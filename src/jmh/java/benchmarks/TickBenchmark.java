@@ -0,0 +1,69 @@
+/* TickBenchmark.java
+ *
+ *  This class times whole ticks of the simulation, without drawing, under
+ *  JMH. Left running, a fleet ends up mostly parked at red lights and dead
+ *  ends, which is cheaper to tick, so every iteration starts again from the
+ *  city as it was generated and times the same number of ticks from there.
+ *  Results are the time of that many ticks.
+ *
+ *  Compilation: gradle jmhClasses
+ *  Run: gradle jmh -Pjmh="TickBenchmark -p fleet=1000,100000 -p map=100,1000"
+ */
+
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 20, batchSize = TickBenchmark.TICKS)
+@Measurement(iterations = 20, batchSize = TickBenchmark.TICKS)
+@Fork(2)
+public class TickBenchmark {
+
+    // Ticks each iteration runs from the starting state
+    static final int TICKS = 50;
+
+    // Number of cars in the city
+    @Param({ "1000", "100000" })
+    public int fleet;
+
+    // Side of the city in squares
+    @Param({ "100", "1000" })
+    public int map;
+
+    // Stores the city being simulated
+    private Workload city;
+
+    // Generates the city once for each fleet size and map size
+    @Setup(Level.Trial)
+    public void setUp() {
+        city = Workload.create(fleet, map);
+    }
+
+    // Starts every iteration from the city as it was generated
+    @Setup(Level.Iteration)
+    public void restart() {
+        city.restart();
+    }
+
+    // Runs one whole tick of the simulation
+    @Benchmark
+    public double tick() {
+        return city.tick();
+    }
+}
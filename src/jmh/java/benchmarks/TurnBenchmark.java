@@ -0,0 +1,69 @@
+/* TurnBenchmark.java
+ *
+ *  This class times turning every car that has reached the end of its road,
+ *  under JMH. A pass turns the cars it looks at, so every iteration puts
+ *  the fleet back the way it started, outside the timed part, and times
+ *  the same fixed number of passes from there. Results are the time of
+ *  that many passes.
+ *
+ *  Compilation: gradle jmhClasses
+ *  Run: gradle jmh -Pjmh="TurnBenchmark -p fleet=1000,100000 -p map=100,1000"
+ */
+
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20, batchSize = TurnBenchmark.PASSES)
+@Measurement(iterations = 20, batchSize = TurnBenchmark.PASSES)
+@Fork(2)
+public class TurnBenchmark {
+
+    // Passes each iteration runs from the starting fleet
+    static final int PASSES = 50;
+
+    // Number of cars in the city
+    @Param({ "1000", "100000" })
+    public int fleet;
+
+    // Side of the city in squares
+    @Param({ "100", "1000" })
+    public int map;
+
+    // Stores the city the cars turn in
+    private Workload city;
+
+    // Generates the city once for each fleet size and map size
+    @Setup(Level.Trial)
+    public void setUp() {
+        city = Workload.create(fleet, map);
+    }
+
+    // Starts every iteration from the fleet as it was generated
+    @Setup(Level.Iteration)
+    public void reset() {
+        city.reset();
+    }
+
+    // Turns every car that has reached the end of its road
+    @Benchmark
+    public double makeTurn() {
+        return city.makeTurn();
+    }
+}
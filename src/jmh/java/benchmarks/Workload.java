@@ -0,0 +1,60 @@
+/* Workload.java
+ *
+ *  This interface is what the JMH benchmarks run: the passes of the
+ *  simulator's Benchmarks class on one generated grid city. JMH only takes
+ *  benchmarks from a named package, and a named package cannot use the
+ *  simulator's classes in the default package, so the benchmarks load an
+ *  implementation of this interface (JmhWorkload) by name instead.
+ *
+ *  Compilation: gradle jmhClasses
+ *  Run: used by the benchmarks in this package
+ */
+
+package benchmarks;
+
+public interface Workload {
+
+    // Name of the class in the default package that implements the interface
+    String IMPLEMENTATION = "JmhWorkload";
+
+    // Returns a workload on a grid city of about the given side with the
+    // given number of cars
+    static Workload create(int numAC, int mapSize) {
+        try {
+            Workload w = (Workload) Class.forName(IMPLEMENTATION)
+                    .getDeclaredConstructor().newInstance();
+            w.setUp(numAC, mapSize);
+            return w;
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot load " + IMPLEMENTATION, e);
+        }
+    }
+
+    // Generates the city with the given number of cars and about the given side
+    void setUp(int numAC, int mapSize);
+
+    // Puts the fleet back the way it started
+    void reset();
+
+    // Puts the whole simulation back the way it started
+    void restart();
+
+    // Moves every car one tick
+    double updatePosition();
+
+    // Turns every car that has reached the end of its road
+    double makeTurn();
+
+    // Lays every road out in a new grid the size of the map
+    double buildRoad();
+
+    // Adds up the distance from every car to the first stoplight
+    double distanceTo();
+
+    // Works out the phase of every stoplight
+    double phaseAt();
+
+    // Runs one whole tick of the simulation without drawing
+    double tick();
+}